@@ -0,0 +1,148 @@
+package resource.adapter;
+
+import org.aopalliance.aop.Advice;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.framework.adapter.AdvisorAdapter;
+import org.springframework.aop.framework.adapter.AdvisorAdapterRegistry;
+import org.springframework.aop.framework.adapter.UnknownAdviceTypeException;
+import org.springframework.util.Assert;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 挡在另一个 {@link AdvisorAdapterRegistry} 前面的缓存, 适配本身还是交给它, 注册的适配器也都在它那里.
+ * getInterceptors 的结果按 Advisor(按引用, 弱引用) 缓存: 建链是 每个代理 × 每个方法 都要来一次的,
+ * 同一个 Advisor 每次都扫一遍适配器、new 一个 MethodBeforeAdviceInterceptor 没有必要, 所有代理共用同一组拦截器.
+ * 适配失败(UnknownAdviceTypeException) 的不缓存, 之后注册了能适配它的适配器, 下次就能成功.
+ *
+ * 注册不是无锁的: 适配器列表在被代理的 registry 里(Spring 的是普通 ArrayList), 这里不再自己另存一份.
+ * 用到它的只有 {@link resource.advised.util.DefaultAdvisorChainFactory}, 也就是创建器打开 selectiveProxy 之后
+ * 由 {@link resource.aopproxyfactory.aopproxyfactory.SelectiveCglibAopProxy} 创建的代理; 走 Spring ProxyFactory 的代理用不上.
+ *
+ * 注意: 绕过这个类、直接往被代理的 registry 里注册适配器(比如 AdvisorAdapterRegistrationManager 往 Spring 的全局 registry 里注册),
+ * 这里感知不到, 已经缓存的结果不会多出新适配器的拦截器. 适配器一般在容器启动时就注册好了, 同一种 Advice 也不会有两个适配器, 影响不大.
+ * @see GlobalAdvisorAdapterRegistry
+ * @author agent on 2026/10/17
+ */
+public class CachingAdvisorAdapterRegistry implements AdvisorAdapterRegistry {
+
+    private final AdvisorAdapterRegistry delegate;
+
+    /**
+     * Advisor -> 拦截器. key 是 Advisor 的弱引用, 按 == 比较; Advisor 被回收后, 对应的条目在下次访问时清掉.
+     */
+    private final Map<AdvisorKey, CachedInterceptors> interceptorCache = new ConcurrentHashMap<>(64);
+
+    private final ReferenceQueue<Advisor> collectedAdvisors = new ReferenceQueue<>();
+
+    /**
+     * 每注册一个适配器就 +1. 缓存的结果带着计算时的值, 对不上就不用,
+     * 这样注册和查询同时发生时, 不会把按旧适配器列表算出来的结果当成新的.
+     */
+    private final AtomicInteger adapterGeneration = new AtomicInteger();
+
+    public CachingAdvisorAdapterRegistry(AdvisorAdapterRegistry delegate) {
+        Assert.notNull(delegate, "AdvisorAdapterRegistry must not be null");
+        this.delegate = delegate;
+    }
+
+    /**
+     * 注意: 返回的是缓存的数组, 所有调用方共用, 不要修改.
+     */
+    @Override
+    public MethodInterceptor[] getInterceptors(Advisor advisor) throws UnknownAdviceTypeException {
+        purgeCollectedAdvisors();
+        int generation = this.adapterGeneration.get();
+        Advice advice = advisor.getAdvice();
+        CachedInterceptors cached = this.interceptorCache.get(new AdvisorKey(advisor));
+        /** getAdvice 每次返回的不一定是同一个(比如 prototype 的 Advice Bean), 对不上就重新适配. **/
+        if (cached != null && cached.generation == generation && cached.advice == advice) {
+            return cached.interceptors;
+        }
+        MethodInterceptor[] interceptors = this.delegate.getInterceptors(advisor);
+        this.interceptorCache.put(new AdvisorKey(advisor, this.collectedAdvisors),
+                new CachedInterceptors(generation, advice, interceptors));
+        return interceptors;
+    }
+
+    @Override
+    public Advisor wrap(Object advice) throws UnknownAdviceTypeException {
+        return this.delegate.wrap(advice);
+    }
+
+    /**
+     * 注册到被代理的 registry 里, 缓存的结果全部作废.
+     */
+    @Override
+    public void registerAdvisorAdapter(AdvisorAdapter adapter) {
+        this.delegate.registerAdvisorAdapter(adapter);
+        this.adapterGeneration.incrementAndGet();
+        this.interceptorCache.clear();
+    }
+
+    private void purgeCollectedAdvisors() {
+        Reference<? extends Advisor> ref;
+        while ((ref = this.collectedAdvisors.poll()) != null) {
+            this.interceptorCache.remove(ref);
+        }
+    }
+
+
+    /**
+     * Advisor 的弱引用, 按 == 比较. 查询时用不带 ReferenceQueue 的临时 key.
+     */
+    private static final class AdvisorKey extends WeakReference<Advisor> {
+
+        private final int hashCode;
+
+        AdvisorKey(Advisor advisor) {
+            super(advisor);
+            this.hashCode = System.identityHashCode(advisor);
+        }
+
+        AdvisorKey(Advisor advisor, ReferenceQueue<Advisor> queue) {
+            super(advisor, queue);
+            this.hashCode = System.identityHashCode(advisor);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof AdvisorKey)) {
+                return false;
+            }
+            Advisor advisor = get();
+            return (advisor != null && advisor == ((AdvisorKey) other).get());
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+    }
+
+
+    /** 缓存的结果: 适配时的适配器版本、Advice 和得到的拦截器. **/
+    private static final class CachedInterceptors {
+
+        private final int generation;
+
+        private final Advice advice;
+
+        private final MethodInterceptor[] interceptors;
+
+        CachedInterceptors(int generation, Advice advice, MethodInterceptor[] interceptors) {
+            this.generation = generation;
+            this.advice = advice;
+            this.interceptors = interceptors;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package resource.adapter;
+
+import org.springframework.aop.framework.adapter.AdvisorAdapterRegistry;
+
+/**
+ * 全局共用一个挡在 {@link org.springframework.aop.framework.adapter.GlobalAdvisorAdapterRegistry} 前面的 {@link CachingAdvisorAdapterRegistry}.
+ * 适配器只有 Spring 的全局 registry 那一份: 创建器、ProxyFactoryBean wrap 用的, AdvisorAdapterRegistrationManager 注册自定义适配器用的,
+ * 和这里建链时适配用的是同一批适配器, 不会出现 wrap 成功、建链时却 UnknownAdviceTypeException 的情况.
+ * 共用的好处是: 它缓存的适配结果, 所有代理都能用上.
+ * @author agent on 2026/10/17
+ */
+public final class GlobalAdvisorAdapterRegistry {
+
+    private GlobalAdvisorAdapterRegistry() {
+    }
+
+    private static final AdvisorAdapterRegistry instance = new CachingAdvisorAdapterRegistry(
+            org.springframework.aop.framework.adapter.GlobalAdvisorAdapterRegistry.getInstance());
+
+    public static AdvisorAdapterRegistry getInstance() {
+        return instance;
+    }
+
+}
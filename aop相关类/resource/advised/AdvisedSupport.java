@@ -12,18 +12,25 @@ import org.springframework.aop.framework.Advised;
 import org.springframework.aop.framework.*;
 import org.springframework.aop.support.DefaultIntroductionAdvisor;
 import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.MethodMatchers;
 import org.springframework.aop.target.EmptyTargetSource;
 import org.springframework.aop.target.SingletonTargetSource;
 import org.springframework.util.Assert;
 import org.springframework.util.ClassUtils;
 import org.springframework.util.CollectionUtils;
 import org.springframework.aop.framework.autoproxy.AbstractAutoProxyCreator;
+import resource.advised.util.CompiledInterceptorChain;
+import resource.advised.util.DirectTargetCall;
+import resource.advised.util.MethodDispatchTable;
+import resource.advised.util.SharedChainCache;
+import resource.advised.util.TargetInvoker;
 
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.lang.reflect.Method;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 对 Advised 的接口方法进行了实现,
@@ -42,9 +49,73 @@ public class AdvisedSupport extends ProxyConfig implements Advised {
 
     private boolean preFiltered = false;
 
+    /**
+     * 是否在配置冻结之后, 把每个方法的拦截器链 "编译" 成 {@link CompiledInterceptorChain}.
+     * 默认 false, 走原来的 List + 下标 的方式.
+     * 只有 frozen 为 true 时才会生效, 没冻结的话链随时可能变, 编译了也白编译.
+     */
+    private boolean compileChain = false;
+
+    /**
+     * 调用目标方法时, 是否用 MethodHandle 代替反射的 Method.invoke.
+     * 默认 false. 每个方法的 MethodHandle 只解析一次, 缓存在 {@link #targetInvokerCache} 里.
+     * @see TargetInvoker
+     */
+    private boolean methodHandleInvocation = false;
+
+    /**
+     * 基于类的代理, 是否只重写有拦截器的方法, 其余方法直接分派给目标对象.
+     * 默认 false. 有拦截器的方法走编译过的链, 所以还要打开 compileChain;
+     * 另外只有 frozen 为 true、TargetSource 是静态的、并且不 exposeProxy 时才会生效.
+     * @see resource.aopproxyfactory.aopproxyfactory.SelectiveCglibAopProxy
+     */
+    private boolean selectiveProxy = false;
+
+    /**
+     * 编译过的拦截器链, 是否按线程复用 MethodInvocation 对象, 而不是每次调用都 new 一个.
+     * 默认 false. 只对编译过的链有用, 并且要求链上的拦截器全都实现了
+     * {@link resource.methodinterceptor.NonRetainingMethodInterceptor} 时才会复用.
+     */
+    private boolean reuseInvocation = false;
+
     AdvisorChainFactory advisorChainFactory = new DefaultAdvisorChainFactory();
 
-    private transient Map<MethodCacheKey, List<Object>> methodCache;
+    /**
+     * 方法 -> 拦截器链, 链上带着计算它时的快照版本号,
+     * 版本号和当前快照对不上的链不会被返回, 见 {@link #getInterceptorsAndDynamicInterceptionAdvice(Method, Class)}.
+     */
+    private transient Map<MethodCacheKey, VersionedChain> methodCache;
+
+    /**
+     * 冻结之后 "编译" 过的拦截器链, 只有 {@link #isCompileChain()} 为 true 才会用到.
+     * @see #getCompiledChain(Method, Class)
+     */
+    private transient Map<MethodCacheKey, CompiledInterceptorChain> compiledChainCache;
+
+    /**
+     * 每个方法调用目标方法的方式, 和拦截器链放在一起缓存.
+     * 它只和 Method 本身有关, 和 Advisor 无关, 所以 adviceChanged() 不用清它.
+     * @see #getTargetInvoker(Method)
+     */
+    private transient Map<MethodCacheKey, TargetInvoker> targetInvokerCache;
+
+    /**
+     * 零拦截器快速通道的判断结果. 直接用 Method 做 key, 查的时候不用 new MethodCacheKey.
+     * @see #getDirectTargetCall(Method, Class)
+     */
+    private transient Map<Method, DirectTargetCall> directCallCache;
+
+    /**
+     * 冻结之后的方法分派表, 没冻结时为 null, 走 {@link #methodCache}.
+     * @see #initDispatchTable()
+     */
+    private transient volatile MethodDispatchTable dispatchTable;
+
+    /** 最近一次 Advisor 变更让多少条缓存的链失效了. **/
+    private volatile int lastInvalidatedChainCount;
+
+    /** 累计失效的链的条数. **/
+    private final AtomicLong totalInvalidatedChainCount = new AtomicLong();
 
     /**
      * 当前代理类实现的接口.
@@ -55,33 +126,68 @@ public class AdvisedSupport extends ProxyConfig implements Advised {
     private List<Class<?>> interfaces = new ArrayList<>();
 
 
+    /**
+     * 写的一方用的 Advisor 列表, 读的一方(拦截器链的计算、{@link #getAdvisors()}) 一律读 {@link #snapshot}.
+     */
     private List<Advisor> advisors = new ArrayList<>();
 
-    private Advisor[] advisorArray = new Advisor[0];
+    /**
+     * 当前配置的不可变快照: (advisors, interfaces, targetSource) + 版本号.
+     * 读: 一次 volatile 读, 不加锁. 写: 所有修改配置的方法都是 synchronized 的, 写的一方互斥,
+     * 在锁里改完写的一方的数据, 再由 {@link #publishSnapshot()} 在同一把锁里生成并发布新快照.
+     */
+    private transient volatile AdvisorSnapshot snapshot =
+            new AdvisorSnapshot(0, new Advisor[0], new Class<?>[0], EMPTY_TARGET_SOURCE);
+
+    /**
+     * 编辑会话的嵌套层数, > 0 表示正在批量修改:
+     * 这期间快照不发布, 缓存不失效, adviceChanged 不调, 都攒到 {@link #commitAdvisorEdit()} 时一次做完.
+     */
+    private transient int editDepth;
+
+    /**
+     * 编辑会话属于哪个线程. 会话期间别的线程来修改配置直接报错, 不能悄悄混进这次会话里.
+     * 只有会话所在的线程会把它设成自己, 所以 "它等于当前线程" 这个判断不用加锁.
+     */
+    private transient volatile Thread editOwner;
+
+    /** 编辑会话期间变更过的 Advisor. **/
+    private transient List<Advisor> pendingChangedAdvisors;
+
+    /** 编辑会话期间是否有需要全部失效的变更(比如加了接口、换了 TargetSource). **/
+    private transient boolean pendingFullInvalidation;
 
 
     public AdvisedSupport() {
         this.methodCache = new ConcurrentHashMap<>(32);
+        this.compiledChainCache = new ConcurrentHashMap<>(32);
+        this.targetInvokerCache = new ConcurrentHashMap<>(32);
+        this.directCallCache = new ConcurrentHashMap<>(32);
     }
 
     public AdvisedSupport(Class<?>... interfaces) {
         this.methodCache = new ConcurrentHashMap<>(32);
+        this.compiledChainCache = new ConcurrentHashMap<>(32);
+        this.targetInvokerCache = new ConcurrentHashMap<>(32);
+        this.directCallCache = new ConcurrentHashMap<>(32);
         setInterfaces(interfaces);
     }
 
     @Override
-    public void setTargetSource(TargetSource targetSource) {
+    public synchronized void setTargetSource(TargetSource targetSource) {
+        checkEditOwner();
         this.targetSource = (targetSource != null ? targetSource : EMPTY_TARGET_SOURCE);
+        targetSourceChanged();
     }
 
     @Override
     public TargetSource getTargetSource() {
-        return this.targetSource;
+        return this.snapshot.getTargetSource();
     }
 
     @Override
     public Class<?> getTargetClass() {
-        return this.targetSource.getTargetClass();
+        return getTargetSource().getTargetClass();
     }
 
     @Override
@@ -94,14 +200,46 @@ public class AdvisedSupport extends ProxyConfig implements Advised {
         return this.preFiltered;
     }
 
+    public void setCompileChain(boolean compileChain) {
+        this.compileChain = compileChain;
+    }
+
+    public boolean isCompileChain() {
+        return this.compileChain;
+    }
+
+    public void setMethodHandleInvocation(boolean methodHandleInvocation) {
+        this.methodHandleInvocation = methodHandleInvocation;
+    }
+
+    public boolean isMethodHandleInvocation() {
+        return this.methodHandleInvocation;
+    }
+
+    public void setSelectiveProxy(boolean selectiveProxy) {
+        this.selectiveProxy = selectiveProxy;
+    }
+
+    public boolean isSelectiveProxy() {
+        return this.selectiveProxy;
+    }
+
+    public void setReuseInvocation(boolean reuseInvocation) {
+        this.reuseInvocation = reuseInvocation;
+    }
+
+    public boolean isReuseInvocation() {
+        return this.reuseInvocation;
+    }
+
     @Override
     public Class<?>[] getProxiedInterfaces() {
-        return ClassUtils.toClassArray(this.interfaces);
+        return this.snapshot.getInterfaces().clone();
     }
 
     @Override
     public boolean isInterfaceProxied(Class<?> intf) {
-        for (Class<?> proxyIntf : this.interfaces) {
+        for (Class<?> proxyIntf : this.snapshot.getInterfaces()) {
             if (intf.isAssignableFrom(proxyIntf)) {
                 return true;
             }
@@ -112,17 +250,25 @@ public class AdvisedSupport extends ProxyConfig implements Advised {
 
     @Override
     public final Advisor[] getAdvisors() {
-        return this.advisorArray;
+        return this.snapshot.getAdvisors();
+    }
+
+    /**
+     * 当前配置的快照, 需要前后一致地读 advisors/interfaces/targetSource 时用它.
+     */
+    public final AdvisorSnapshot getSnapshot() {
+        return this.snapshot;
     }
 
     @Override
-    public void addAdvisor(Advisor advisor) {
+    public synchronized void addAdvisor(Advisor advisor) {
         int pos = this.advisors.size();
         addAdvisor(pos, advisor);
     }
 
     @Override
-    public void addAdvisor(int pos, Advisor advisor) throws AopConfigException {
+    public synchronized void addAdvisor(int pos, Advisor advisor) throws AopConfigException {
+        checkEditOwner();
         if (advisor instanceof IntroductionAdvisor) {
             validateIntroductionAdvisor((IntroductionAdvisor) advisor);
         }
@@ -130,8 +276,9 @@ public class AdvisedSupport extends ProxyConfig implements Advised {
     }
 
     @Override
-    public boolean removeAdvisor(Advisor advisor) {
-        int index = indexOf(advisor);
+    public synchronized boolean removeAdvisor(Advisor advisor) {
+        Assert.notNull(advisor, "Advisor must not be null");
+        int index = this.advisors.indexOf(advisor);
         if (index == -1) {
             return false;
         }
@@ -142,7 +289,8 @@ public class AdvisedSupport extends ProxyConfig implements Advised {
     }
 
     @Override
-    public void removeAdvisor(int index) throws AopConfigException {
+    public synchronized void removeAdvisor(int index) throws AopConfigException {
+        checkEditOwner();
         if (isFrozen()) {
             throw new AopConfigException("Cannot remove Advisor: Configuration is frozen.");
         }
@@ -161,31 +309,40 @@ public class AdvisedSupport extends ProxyConfig implements Advised {
         }
 
         this.advisors.remove(index);
-        updateAdvisorArray();
-        adviceChanged();
+        advisorsChanged(Collections.singleton(advisor));
     }
 
+    /**
+     * 读的是已经提交的配置; 编辑会话所在的线程读的是它自己还没提交的修改, 这样会话里照样可以 indexOf 完再按下标删.
+     */
     @Override
     public int indexOf(Advisor advisor) {
         Assert.notNull(advisor, "Advisor must not be null");
-        return this.advisors.indexOf(advisor);
+        return Arrays.asList(visibleAdvisors()).indexOf(advisor);
     }
 
     @Override
-    public boolean replaceAdvisor(Advisor a, Advisor b) throws AopConfigException {
+    public synchronized boolean replaceAdvisor(Advisor a, Advisor b) throws AopConfigException {
         Assert.notNull(a, "Advisor a must not be null");
         Assert.notNull(b, "Advisor b must not be null");
-        int index = indexOf(a);
+        int index = this.advisors.indexOf(a);
         if (index == -1) {
             return false;
         }
-        removeAdvisor(index);
-        addAdvisor(index, b);
+        /** 一删一加算一次修改, 只通知一次. **/
+        beginAdvisorEdit();
+        try {
+            removeAdvisor(index);
+            addAdvisor(index, b);
+        }
+        finally {
+            commitAdvisorEdit();
+        }
         return true;
     }
 
     @Override
-    public void addAdvice(Advice advice) throws AopConfigException {
+    public synchronized void addAdvice(Advice advice) throws AopConfigException {
         int pos = this.advisors.size();
         addAdvice(pos, advice);
     }
@@ -211,8 +368,9 @@ public class AdvisedSupport extends ProxyConfig implements Advised {
     }
 
     @Override
-    public boolean removeAdvice(Advice advice) throws AopConfigException {
-        int index = indexOf(advice);
+    public synchronized boolean removeAdvice(Advice advice) throws AopConfigException {
+        Assert.notNull(advice, "Advice must not be null");
+        int index = indexOfAdvice(this.advisors.toArray(new Advisor[this.advisors.size()]), advice);
         if (index == -1) {
             return false;
         }
@@ -222,18 +380,33 @@ public class AdvisedSupport extends ProxyConfig implements Advised {
         }
     }
 
+    /** 和 {@link #indexOf(Advisor)} 一样, 读的是已经提交的配置. **/
     @Override
     public int indexOf(Advice advice) {
         Assert.notNull(advice, "Advice must not be null");
-        for (int i = 0; i < this.advisors.size(); i++) {
-            Advisor advisor = this.advisors.get(i);
-            if (advisor.getAdvice() == advice) {
+        return indexOfAdvice(visibleAdvisors(), advice);
+    }
+
+    private static int indexOfAdvice(Advisor[] advisors, Advice advice) {
+        for (int i = 0; i < advisors.length; i++) {
+            if (advisors[i].getAdvice() == advice) {
                 return i;
             }
         }
         return -1;
     }
 
+    /**
+     * 读操作看到的 Advisor: 一般就是当前快照里的;
+     * 当前线程正在编辑会话里的话, 是它写的一方的列表(别的线程这时改不了它).
+     */
+    private Advisor[] visibleAdvisors() {
+        if (this.editOwner == Thread.currentThread()) {
+            return this.advisors.toArray(new Advisor[this.advisors.size()]);
+        }
+        return this.snapshot.getAdvisors();
+    }
+
     @Override
     public String toProxyConfigString() {
         return toString();
@@ -241,8 +414,10 @@ public class AdvisedSupport extends ProxyConfig implements Advised {
 
     public void setTarget(Object target) { setTargetSource(new SingletonTargetSource(target)); }
 
-    public void setTargetClass(Class<?> targetClass) {
+    public synchronized void setTargetClass(Class<?> targetClass) {
+        checkEditOwner();
         this.targetSource = EmptyTargetSource.forClass(targetClass);
+        targetSourceChanged();
     }
 
     public void setAdvisorChainFactory(AdvisorChainFactory advisorChainFactory) {
@@ -258,34 +433,43 @@ public class AdvisedSupport extends ProxyConfig implements Advised {
     }
 
 
-    public void setInterfaces(Class<?>... interfaces) {
+    public synchronized void setInterfaces(Class<?>... interfaces) {
         Assert.notNull(interfaces, "Interfaces must not be null");
+        checkEditOwner();
         this.interfaces.clear();
+        publishSnapshot();
         for (Class<?> ifc : interfaces) {
             addInterface(ifc);
         }
     }
 
-    public void addInterface(Class<?> intf) {
+    public synchronized void addInterface(Class<?> intf) {
         Assert.notNull(intf, "Interface must not be null");
+        checkEditOwner();
         if (!intf.isInterface()) {
             throw new IllegalArgumentException("[" + intf.getName() + "] is not an interface");
         }
         if (!this.interfaces.contains(intf)) {
             this.interfaces.add(intf);
-            adviceChanged();
+            configurationChanged();
         }
     }
 
-    public boolean removeInterface(Class<?> intf) {
-        return this.interfaces.remove(intf);
+    public synchronized boolean removeInterface(Class<?> intf) {
+        checkEditOwner();
+        boolean removed = this.interfaces.remove(intf);
+        if (removed) {
+            publishSnapshot();
+        }
+        return removed;
     }
 
     public void addAdvisors(Advisor... advisors) {
         addAdvisors(Arrays.asList(advisors));
     }
 
-    public void addAdvisors(Collection<Advisor> advisors) {
+    public synchronized void addAdvisors(Collection<Advisor> advisors) {
+        checkEditOwner();
         if (isFrozen()) {
             throw new AopConfigException("Cannot add advisor: Configuration is frozen.");
         }
@@ -297,8 +481,7 @@ public class AdvisedSupport extends ProxyConfig implements Advised {
                 Assert.notNull(advisor, "Advisor must not be null");
                 this.advisors.add(advisor);
             }
-            updateAdvisorArray();
-            adviceChanged();
+            advisorsChanged(advisors);
         }
     }
 
@@ -321,15 +504,137 @@ public class AdvisedSupport extends ProxyConfig implements Advised {
                     "Illegal position " + pos + " in advisor list with size " + this.advisors.size());
         }
         this.advisors.add(pos, advisor);
+        advisorsChanged(Collections.singleton(advisor));
+    }
+
+    /**
+     * 开始一次批量修改. 之后的 add/remove/replaceAdvisor、addInterface 等修改只改写的一方的数据,
+     * 直到 {@link #commitAdvisorEdit()}: 重建一次快照、失效一次缓存(只调一次 adviceChanged).
+     * 注意: 这个类没有 AdvisedSupportListener, 监听器在 {@link ProxyCreatorSupport} 上, 而它继承的是 Spring 的 AdvisedSupport,
+     * 不走这里的编辑会话. 要在提交时通知谁, 子类重写 adviceChanged 即可, 一次提交只会调一次.
+     * 并发的调用方在提交之前看到的都是旧配置, 提交之后一次性看到全部修改.
+     * 可以嵌套, 最外层提交时才生效. 编辑会话属于调用它的线程: 提交之前, 别的线程来修改配置或者开会话都会抛 IllegalStateException.
+     * 用法: ↓
+     * <pre>
+     * advised.beginAdvisorEdit();
+     * try {
+     *     advised.replaceAdvisor(a, b);
+     *     advised.removeAdvisor(c);
+     * }
+     * finally {
+     *     advised.commitAdvisorEdit();
+     * }
+     * </pre>
+     */
+    public synchronized void beginAdvisorEdit() {
+        checkEditOwner();
+        if (this.editDepth++ == 0) {
+            this.editOwner = Thread.currentThread();
+            this.pendingChangedAdvisors = new ArrayList<>();
+            this.pendingFullInvalidation = false;
+        }
+    }
+
+    /**
+     * 提交批量修改. 中途抛了异常的话, 已经做了的修改也照样提交.
+     */
+    public synchronized void commitAdvisorEdit() {
+        if (this.editDepth == 0) {
+            throw new IllegalStateException("No advisor edit in progress");
+        }
+        checkEditOwner();
+        if (--this.editDepth > 0) {
+            return;
+        }
+        List<Advisor> changedAdvisors = this.pendingChangedAdvisors;
+        boolean fullInvalidation = this.pendingFullInvalidation;
+        this.editOwner = null;
+        this.pendingChangedAdvisors = null;
+        this.pendingFullInvalidation = false;
+
+        publishSnapshot();
+        if (fullInvalidation) {
+            adviceChanged();
+        }
+        else if (!changedAdvisors.isEmpty()) {
+            adviceChanged(changedAdvisors);
+        }
+    }
+
+    /** 是否处在批量修改中. **/
+    public boolean isEditingAdvisors() {
+        return this.editOwner != null;
+    }
+
+    /**
+     * 别的线程正在编辑会话里的话, 不允许修改. 在 synchronized 的修改方法里一开头调用.
+     */
+    private void checkEditOwner() {
+        Thread owner = this.editOwner;
+        if (owner != null && owner != Thread.currentThread()) {
+            throw new IllegalStateException(
+                    "Advisor edit in progress on thread [" + owner.getName() + "]: configuration cannot be modified");
+        }
+    }
+
+    /**
+     * Advisor 变了: 不在编辑会话里就立刻发布快照并失效缓存, 否则先攒着.
+     */
+    private void advisorsChanged(Collection<? extends Advisor> changedAdvisors) {
+        if (this.editDepth > 0) {
+            this.pendingChangedAdvisors.addAll(changedAdvisors);
+            return;
+        }
         updateAdvisorArray();
+        adviceChanged(changedAdvisors);
+    }
+
+    /**
+     * 接口之类的配置变了, 缓存要全部失效. 编辑会话里同样先攒着.
+     */
+    private void configurationChanged() {
+        if (this.editDepth > 0) {
+            this.pendingFullInvalidation = true;
+            return;
+        }
+        publishSnapshot();
         adviceChanged();
     }
 
+    /**
+     * 换了 TargetSource: 快照要重新发布. 编辑会话里记成全部失效,
+     * 提交时不能把旧的链当成 "没受影响" 留下来, targetClass 可能都已经变了.
+     */
+    private void targetSourceChanged() {
+        if (this.editDepth > 0) {
+            this.pendingFullInvalidation = true;
+            return;
+        }
+        publishSnapshot();
+    }
+
     /**
      * Bring the array up to date with the list.
+     * 现在就是发布一个新的快照.
      */
     protected final void updateAdvisorArray() {
-        this.advisorArray = this.advisors.toArray(new Advisor[this.advisors.size()]);
+        publishSnapshot();
+    }
+
+    /**
+     * 根据写的一方的 advisors/interfaces/targetSource 生成新快照并发布, 版本号 +1.
+     * 只在持有写锁(this) 时调用: 数组就是在锁里从写的一方的数据生成的, 不会和别的写操作交错.
+     * 读的一方不会被阻塞, 要么看到旧快照, 要么看到新快照.
+     * 编辑会话中不发布, 提交时统一发布.
+     */
+    private void publishSnapshot() {
+        if (this.editDepth > 0) {
+            return;
+        }
+        Advisor[] advisorArray = this.advisors.toArray(new Advisor[this.advisors.size()]);
+        Class<?>[] interfaceArray = ClassUtils.toClassArray(this.interfaces);
+        this.snapshot = new AdvisorSnapshot(
+                this.snapshot.getVersion() + 1, advisorArray, interfaceArray, this.targetSource);
     }
 
     protected final List<Advisor> getAdvisorsInternal() {
@@ -338,7 +643,7 @@ public class AdvisedSupport extends ProxyConfig implements Advised {
 
     public boolean adviceIncluded(Advice advice) {
         if (advice != null) {
-            for (Advisor advisor : this.advisors) {
+            for (Advisor advisor : visibleAdvisors()) {
                 if (advisor.getAdvice() == advice) {
                     return true;
                 }
@@ -353,7 +658,7 @@ public class AdvisedSupport extends ProxyConfig implements Advised {
     public int countAdvicesOfType(Class<?> adviceClass) {
         int count = 0;
         if (adviceClass != null) {
-            for (Advisor advisor : this.advisors) {
+            for (Advisor advisor : visibleAdvisors()) {
                 if (adviceClass.isInstance(advisor.getAdvice())) {
                     count++;
                 }
@@ -367,22 +672,326 @@ public class AdvisedSupport extends ProxyConfig implements Advised {
      * 例如 增强A、B 都可以作用于这个类, 但是 A 只作用于 a()方法, B 只作用于 b()方法. 所以这里需要根据 Method参数进行筛讯.
      */
     public List<Object> getInterceptorsAndDynamicInterceptionAdvice(Method method, Class<?> targetClass) {
+        /**
+         * 先读一次快照, 拿到当前版本号. 之后算出来的链一定不会比这个版本旧,
+         * 所以用这个版本号给链打标签, 只可能 "标旧了", 不可能把旧链标成新版本.
+         */
+        AdvisorSnapshot snapshot = this.snapshot;
+        long version = snapshot.getVersion();
+        /** 冻结的代理先查分派表: 不分配对象, 不做 hash 探测. **/
+        MethodDispatchTable table = this.dispatchTable;
+        if (table != null && table.getVersion() == version && table.getTargetClass() == targetClass) {
+            int methodId = table.indexOf(method);
+            if (methodId >= 0) {
+                return table.getChain(methodId);
+            }
+        }
         MethodCacheKey cacheKey = new MethodCacheKey(method);
-        List<Object> cached = this.methodCache.get(cacheKey);
-        if (cached == null) {
-            cached = this.advisorChainFactory.getInterceptorsAndDynamicInterceptionAdvice(
-                    this, method, targetClass);
+        VersionedChain cached = this.methodCache.get(cacheKey);
+        if (cached == null || cached.version != version) {
+            cached = new VersionedChain(version, computeChain(snapshot, method, targetClass));
             this.methodCache.put(cacheKey, cached);
         }
-        return cached;
+        return cached.chain;
+    }
+
+    /**
+     * 真正去算链. 用的是默认的 AdvisorChainFactory 时, 先去全局的 {@link SharedChainCache} 里找,
+     * 配置一样的代理(比如同一个 prototype Bean 的多个代理)共用同一条链.
+     */
+    private List<Object> computeChain(AdvisorSnapshot snapshot, Method method, Class<?> targetClass) {
+        if (SharedChainCache.isShareable(this.advisorChainFactory)) {
+            return SharedChainCache.getInstance().getChain(this, snapshot.getAdvisors(), method, targetClass);
+        }
+        return this.advisorChainFactory.getInterceptorsAndDynamicInterceptionAdvice(this, method, targetClass);
+    }
+
+    /**
+     * 配置冻结之后, 为代理的所有方法分配 id 并建好分派表. 创建代理时调用.
+     * 方法包括: 代理的接口的方法 + 目标类的 public 方法. 没冻结的话啥也不干.
+     * @see resource.aopproxyfactory.aopproxyfactory.SelectiveCglibAopProxy
+     */
+    public void initDispatchTable() {
+        if (!isFrozen() || this.dispatchTable != null) {
+            return;
+        }
+        this.dispatchTable = MethodDispatchTable.build(
+                this, collectProxiedMethods(), getTargetClass(), this.snapshot.getVersion());
+    }
+
+    /**
+     * 预热: 把代理的接口方法、目标类的 public 方法的拦截器链都提前算好,
+     * 免得第一次调用时才去做 ClassFilter、MethodMatcher(AspectJ 的 shadow match)、适配器查找那一堆事.
+     * 冻结的配置直接建分派表, 没冻结的放进 methodCache.
+     * @return 预热了多少个方法
+     */
+    public int warmUpChains() {
+        if (isFrozen()) {
+            initDispatchTable();
+            MethodDispatchTable table = this.dispatchTable;
+            return (table != null ? table.size() : 0);
+        }
+        Class<?> targetClass = getTargetClass();
+        Set<Method> methods = collectProxiedMethods();
+        for (Method method : methods) {
+            getInterceptorsAndDynamicInterceptionAdvice(method, targetClass);
+        }
+        return methods.size();
+    }
+
+    /** 代理可能被调用到的方法: 代理的接口的方法 + 目标类的 public 方法. **/
+    private Set<Method> collectProxiedMethods() {
+        Set<Method> methods = new LinkedHashSet<>();
+        for (Class<?> intf : this.snapshot.getInterfaces()) {
+            methods.addAll(Arrays.asList(intf.getMethods()));
+        }
+        Class<?> targetClass = getTargetClass();
+        if (targetClass != null) {
+            methods.addAll(Arrays.asList(targetClass.getMethods()));
+        }
+        return methods;
+    }
+
+    /**
+     * 方法在分派表里的 id, 没有分派表或者表里没有时返回 -1.
+     * 代理生成类时查一次, 之后调用时用 {@link #getCompiledChain(int)}.
+     */
+    public int getMethodId(Method method) {
+        MethodDispatchTable table = this.dispatchTable;
+        return (table != null ? table.indexOf(method) : -1);
+    }
+
+    /** 分派表里有多少个方法(id 从 0 到它减一), 没有分派表时为 0. **/
+    public int getMethodCount() {
+        MethodDispatchTable table = this.dispatchTable;
+        return (table != null ? table.size() : 0);
+    }
+
+    /** method id -> Method. **/
+    public Method getMethod(int methodId) {
+        MethodDispatchTable table = this.dispatchTable;
+        if (table == null) {
+            throw new IllegalStateException("No dispatch table: configuration is not frozen");
+        }
+        return table.getMethod(methodId);
+    }
+
+    /**
+     * 按方法 id 取编译过的链: 一次数组下标访问, 不算 Method 的 hash, 也不 new MethodCacheKey.
+     * 每个 id 第一次用到时编译, 放在分派表里.
+     * 没开 compileChain、没有分派表、分派表已经过期时返回 null, 调用方退回 {@link #getCompiledChain(Method, Class)}.
+     * @param methodId {@link #getMethodId(Method)} 的返回值, 必须 >= 0
+     */
+    public CompiledInterceptorChain getCompiledChain(int methodId) {
+        MethodDispatchTable table = this.dispatchTable;
+        if (!isCompileChain() || table == null || table.getVersion() != this.snapshot.getVersion()) {
+            return null;
+        }
+        CompiledInterceptorChain compiled = table.getCompiledChain(methodId);
+        if (compiled == null || compiled.isReuseRequested() != isReuseInvocation()) {
+            Method method = table.getMethod(methodId);
+            compiled = CompiledInterceptorChain.compile(method, table.getChain(methodId), getTargetInvoker(method),
+                    isReuseInvocation());
+            table.setCompiledChain(methodId, compiled);
+        }
+        return compiled;
+    }
+
+    /**
+     * 获取编译过的拦截器链, 代理调用时优先走它.
+     * 没开 compileChain, 或者配置还没冻结(链随时会变)时返回 null, 调用方还是走原来的
+     * {@link #getInterceptorsAndDynamicInterceptionAdvice(Method, Class)} + ReflectiveMethodInvocation 那一套.
+     * @see resource.aopproxyfactory.aopproxyfactory.SelectiveCglibAopProxy
+     */
+    public CompiledInterceptorChain getCompiledChain(Method method, Class<?> targetClass) {
+        if (!isCompileChain() || !isFrozen()) {
+            return null;
+        }
+        MethodCacheKey cacheKey = new MethodCacheKey(method);
+        CompiledInterceptorChain compiled = this.compiledChainCache.get(cacheKey);
+        /** reuseInvocation 开关和 methodHandleInvocation 一样可以随时改, 对不上就重新编译. **/
+        if (compiled == null || compiled.isReuseRequested() != isReuseInvocation()) {
+            compiled = CompiledInterceptorChain.compile(method,
+                    getInterceptorsAndDynamicInterceptionAdvice(method, targetClass), getTargetInvoker(method),
+                    isReuseInvocation());
+            this.compiledChainCache.put(cacheKey, compiled);
+        }
+        return compiled;
+    }
+
+    /**
+     * 获取调用目标方法的 {@link TargetInvoker}, 由 {@link #isMethodHandleInvocation()} 决定是 MethodHandle 还是反射.
+     * 开关是可以随时改的, 所以缓存里的对不上当前开关时重新解析一个.
+     */
+    public TargetInvoker getTargetInvoker(Method method) {
+        MethodCacheKey cacheKey = new MethodCacheKey(method);
+        TargetInvoker invoker = this.targetInvokerCache.get(cacheKey);
+        boolean useMethodHandle = isMethodHandleInvocation();
+        if (invoker == null || invoker.isMethodHandle() != useMethodHandle) {
+            invoker = TargetInvoker.forMethod(method, useMethodHandle);
+            this.targetInvokerCache.put(cacheKey, invoker);
+        }
+        return invoker;
     }
 
+    /**
+     * 零拦截器的快速通道: 方法没有任何拦截器、并且 TargetSource 是静态的时, 返回一个绑定了目标对象的 {@link DirectTargetCall},
+     * 代理拿到之后直接调用它就行, 不用再查链、getTarget()/releaseTarget()、创建 MethodInvocation.
+     * 每个方法只判断一次(有拦截器的也记下来), 配置变了(快照版本号变了) 才重新判断.
+     * exposeProxy 打开时不走快速通道: 目标方法里要能用 AopContext.currentProxy() 拿到代理, 那一套里才会设置.
+     * @return 走不了快速通道时返回 null, 调用方还是走原来那一套
+     */
+    public DirectTargetCall getDirectTargetCall(Method method, Class<?> targetClass) {
+        if (isExposeProxy()) {
+            return null;
+        }
+        AdvisorSnapshot snapshot = this.snapshot;
+        DirectTargetCall call = this.directCallCache.get(method);
+        if (call == null || call.getVersion() != snapshot.getVersion()) {
+            call = computeDirectTargetCall(snapshot, method, targetClass);
+            this.directCallCache.put(method, call);
+        }
+        return (call.isDirect() ? call : null);
+    }
+
+    private DirectTargetCall computeDirectTargetCall(AdvisorSnapshot snapshot, Method method, Class<?> targetClass) {
+        long version = snapshot.getVersion();
+        TargetSource targetSource = snapshot.getTargetSource();
+        if (!targetSource.isStatic() || !getInterceptorsAndDynamicInterceptionAdvice(method, targetClass).isEmpty()) {
+            return DirectTargetCall.notDirect(method, version);
+        }
+        Object target;
+        try {
+            target = targetSource.getTarget();
+        }
+        catch (Exception ex) {
+            return DirectTargetCall.notDirect(method, version);
+        }
+        if (target == null) {
+            return DirectTargetCall.notDirect(method, version);
+        }
+        return DirectTargetCall.forTarget(method, target, version);
+    }
+
+    /**
+     * 配置变了(接口、整体拷贝等), 全部缓存的链都作废.
+     */
     protected void adviceChanged() {
+        int invalidated = clearMethodCaches();
+        recordInvalidation(invalidated);
+    }
+
+    /**
+     * 某几个 Advisor 被加入/删除了, 只让这些 Advisor 能匹配上的方法的链失效, 其余的缓存保留.
+     * 匹配逻辑和 {@link DefaultAdvisorChainFactory} 一致: ClassFilter + 静态的 MethodMatcher.
+     * 以下情况判断不了, 还是全部作废: ↓
+     *     TargetSource 不是静态的: 调用时传进来的 targetClass 不一定就是 getTargetClass().
+     *     IntroductionAdvisor: 会影响所有方法的 hasIntroductions.
+     *     既不是 PointcutAdvisor 也不是 IntroductionAdvisor 的: 本来就作用于所有方法.
+     * 失效的链下次调用时才会重新计算.
+     * @param changedAdvisors 变更的 Advisor
+     */
+    protected void adviceChanged(Collection<? extends Advisor> changedAdvisors) {
+        if (requiresFullInvalidation(changedAdvisors)) {
+            recordInvalidation(clearMethodCaches());
+            return;
+        }
+        this.dispatchTable = null;
+        long version = this.snapshot.getVersion();
+        /** 这次变更只比上一个版本多了 changedAdvisors, 只有上一个版本的链才能拿来判断. **/
+        long previousVersion = version - 1;
+        Class<?> targetClass = getTargetClass();
+        boolean hasIntroductions = hasIntroductions();
+        int invalidated = 0;
+        for (Map.Entry<MethodCacheKey, VersionedChain> entry : this.methodCache.entrySet()) {
+            MethodCacheKey cacheKey = entry.getKey();
+            VersionedChain cached = entry.getValue();
+            if (cached.version == version) {
+                /** 新快照发布之后才算出来的, 本来就是对的. **/
+                continue;
+            }
+            if (cached.version != previousVersion) {
+                /** 更早的版本, 中间还漏了别的变更, 本来就已经不会再被返回了, 直接删掉. **/
+                this.methodCache.remove(cacheKey, cached);
+                this.compiledChainCache.remove(cacheKey);
+            }
+            else if (matchesAny(changedAdvisors, cacheKey.method, targetClass, hasIntroductions)) {
+                this.methodCache.remove(cacheKey, cached);
+                this.compiledChainCache.remove(cacheKey);
+                invalidated++;
+            }
+            else {
+                /** 没受影响的链, 在新版本下也还是它, 把版本号改过来. **/
+                this.methodCache.replace(cacheKey, cached, new VersionedChain(version, cached.chain));
+            }
+        }
+        recordInvalidation(invalidated);
+    }
+
+    private boolean requiresFullInvalidation(Collection<? extends Advisor> changedAdvisors) {
+        if (!getTargetSource().isStatic()) {
+            return true;
+        }
+        for (Advisor advisor : changedAdvisors) {
+            if (!(advisor instanceof PointcutAdvisor)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matchesAny(Collection<? extends Advisor> changedAdvisors, Method method,
+                               Class<?> targetClass, boolean hasIntroductions) {
+        Class<?> actualClass = (targetClass != null ? targetClass : method.getDeclaringClass());
+        for (Advisor advisor : changedAdvisors) {
+            Pointcut pointcut = ((PointcutAdvisor) advisor).getPointcut();
+            if ((isPreFiltered() || pointcut.getClassFilter().matches(actualClass)) &&
+                    MethodMatchers.matches(pointcut.getMethodMatcher(), method, actualClass, hasIntroductions)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasIntroductions() {
+        for (Advisor advisor : this.snapshot.getAdvisors()) {
+            if (advisor instanceof IntroductionAdvisor) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** 清空所有缓存的链, 返回清掉了多少条. **/
+    private int clearMethodCaches() {
+        this.dispatchTable = null;
+        int size = this.methodCache.size();
         this.methodCache.clear();
+        this.compiledChainCache.clear();
+        this.directCallCache.clear();
+        return size;
+    }
+
+    private void recordInvalidation(int invalidated) {
+        this.lastInvalidatedChainCount = invalidated;
+        this.totalInvalidatedChainCount.addAndGet(invalidated);
+    }
+
+    /** 最近一次 Advisor 变更让多少条缓存的链失效了. **/
+    public int getLastInvalidatedChainCount() {
+        return this.lastInvalidatedChainCount;
+    }
+
+    /** 累计失效的链的条数. **/
+    public long getTotalInvalidatedChainCount() {
+        return this.totalInvalidatedChainCount.get();
     }
 
     protected void copyConfigurationFrom(AdvisedSupport other) {
-        copyConfigurationFrom(other, other.targetSource, new ArrayList<Advisor>(other.advisors));
+        /** 读 other 的快照, 不碰它写的一方的数据, 也就不用拿它的锁. **/
+        AdvisorSnapshot otherSnapshot = other.getSnapshot();
+        copyConfigurationFrom(other, otherSnapshot.getTargetSource(),
+                new ArrayList<Advisor>(Arrays.asList(otherSnapshot.getAdvisors())));
     }
 
     /**
@@ -392,11 +1001,13 @@ public class AdvisedSupport extends ProxyConfig implements Advised {
      * @param targetSource the new TargetSource
      * @param advisors the Advisors for the chain
      */
-    protected void copyConfigurationFrom(AdvisedSupport other, TargetSource targetSource, List<Advisor> advisors) {
+    protected synchronized void copyConfigurationFrom(AdvisedSupport other, TargetSource targetSource, List<Advisor> advisors) {
+        checkEditOwner();
         copyFrom(other);
+        copyChainSettingsFrom(other);
         this.targetSource = targetSource;
         this.advisorChainFactory = other.advisorChainFactory;
-        this.interfaces = new ArrayList<>(other.interfaces);
+        this.interfaces = new ArrayList<>(Arrays.asList(other.getSnapshot().getInterfaces()));
         for (Advisor advisor : advisors) {
             if (advisor instanceof IntroductionAdvisor) {
                 validateIntroductionAdvisor((IntroductionAdvisor) advisor);
@@ -408,13 +1019,22 @@ public class AdvisedSupport extends ProxyConfig implements Advised {
         adviceChanged();
     }
 
+    /** ProxyConfig#copyFrom 只管它自己的那几个属性, 链相关的开关在这里拷. **/
+    private void copyChainSettingsFrom(AdvisedSupport other) {
+        this.compileChain = other.compileChain;
+        this.methodHandleInvocation = other.methodHandleInvocation;
+        this.selectiveProxy = other.selectiveProxy;
+        this.reuseInvocation = other.reuseInvocation;
+    }
+
     /**
      * Build a configuration-only copy of this AdvisedSupport,
      * replacing the TargetSource.
      */
-    AdvisedSupport getConfigurationOnlyCopy() {
+    synchronized AdvisedSupport getConfigurationOnlyCopy() {
         AdvisedSupport copy = new AdvisedSupport();
         copy.copyFrom(this);
+        copy.copyChainSettingsFrom(this);
         copy.targetSource = EmptyTargetSource.forClass(getTargetClass(), getTargetSource().isStatic());
         copy.advisorChainFactory = this.advisorChainFactory;
         copy.interfaces = this.interfaces;
@@ -433,6 +1053,11 @@ public class AdvisedSupport extends ProxyConfig implements Advised {
         ois.defaultReadObject();
 
         this.methodCache = new ConcurrentHashMap<>(32);
+        this.compiledChainCache = new ConcurrentHashMap<>(32);
+        this.targetInvokerCache = new ConcurrentHashMap<>(32);
+        this.directCallCache = new ConcurrentHashMap<>(32);
+        this.snapshot = new AdvisorSnapshot(0, new Advisor[0], new Class<?>[0], EMPTY_TARGET_SOURCE);
+        publishSnapshot();
     }
 
 
@@ -454,6 +1079,22 @@ public class AdvisedSupport extends ProxyConfig implements Advised {
     }
 
 
+    /**
+     * 缓存的拦截器链 + 计算它时的快照版本号.
+     */
+    private static final class VersionedChain {
+
+        private final long version;
+
+        private final List<Object> chain;
+
+        VersionedChain(long version, List<Object> chain) {
+            this.version = version;
+            this.chain = chain;
+        }
+    }
+
+
     /**
      * Simple wrapper class around a Method. Used as the key when
      * caching methods, for efficient equals and hashCode comparisons.
@@ -471,8 +1112,18 @@ public class AdvisedSupport extends ProxyConfig implements Advised {
 
         @Override
         public boolean equals(Object other) {
-            return (this == other || (other instanceof MethodCacheKey &&
-                    this.method == ((MethodCacheKey) other).method));
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof MethodCacheKey)) {
+                return false;
+            }
+            /**
+             * 先比引用, 比不上再 equals: 预热时用的是 getMethods() 拿到的 Method,
+             * 和代理调用时传进来的不是同一个实例, 只比引用的话预热的缓存永远命中不了.
+             */
+            Method otherMethod = ((MethodCacheKey) other).method;
+            return (this.method == otherMethod || this.method.equals(otherMethod));
         }
 
         @Override
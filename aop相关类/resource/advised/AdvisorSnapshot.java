@@ -0,0 +1,55 @@
+package resource.advised;
+
+import org.springframework.aop.Advisor;
+import org.springframework.aop.TargetSource;
+
+/**
+ * {@link AdvisedSupport} 某一时刻的配置快照: (advisors, interfaces, targetSource) + 版本号.
+ * 不可变, 读的一方只需要一次 volatile 读就能拿到一份前后一致的配置, 不用加锁.
+ * 写的一方在 AdvisedSupport 的锁里修改, 每次修改都生成一个新快照发布出去, 版本号 +1.
+ * 缓存的拦截器链会带上计算时的版本号, 版本对不上的链不会再被用到.
+ * @see AdvisedSupport#getSnapshot()
+ * @author agent on 2026/10/17
+ */
+public final class AdvisorSnapshot {
+
+    private final long version;
+
+    private final Advisor[] advisors;
+
+    private final Class<?>[] interfaces;
+
+    private final TargetSource targetSource;
+
+    AdvisorSnapshot(long version, Advisor[] advisors, Class<?>[] interfaces, TargetSource targetSource) {
+        this.version = version;
+        this.advisors = advisors;
+        this.interfaces = interfaces;
+        this.targetSource = targetSource;
+    }
+
+    public long getVersion() {
+        return this.version;
+    }
+
+    /** 注意: 返回的是内部数组, 不要修改. **/
+    public Advisor[] getAdvisors() {
+        return this.advisors;
+    }
+
+    /** 注意: 返回的是内部数组, 不要修改. **/
+    public Class<?>[] getInterfaces() {
+        return this.interfaces;
+    }
+
+    public TargetSource getTargetSource() {
+        return this.targetSource;
+    }
+
+    @Override
+    public String toString() {
+        return "AdvisorSnapshot: version " + this.version + ", " + this.advisors.length + " advisors, " +
+                this.interfaces.length + " interfaces, targetSource [" + this.targetSource + "]";
+    }
+
+}
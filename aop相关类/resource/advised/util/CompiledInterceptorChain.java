@@ -0,0 +1,183 @@
+package resource.advised.util;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.MethodMatcher;
+import org.springframework.aop.framework.InterceptorAndDynamicMethodMatcher;
+import org.springframework.aop.framework.ReflectiveMethodInvocation;
+import resource.advised.AdvisedSupport;
+import resource.methodinterceptor.NonRetainingMethodInterceptor;
+import resource.pointcut.TypeOnlyMethodMatcher;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * "编译" 之后的拦截器链.
+ * {@link AdvisedSupport#getInterceptorsAndDynamicInterceptionAdvice} 返回的是 List<Object>,
+ * {@link ReflectiveMethodInvocation#proceed()} 每次都要 list.get(i), 再 instanceof 判断是不是 {@link InterceptorAndDynamicMethodMatcher}.
+ * 这里在链稳定(配置冻结)之后, 一次性把它拆成两个定长数组: ↓
+ *     interceptors: 每个位置上真正要调用的 {@link MethodInterceptor}
+ *     dynamicMatchers: 同位置上的运行时 MethodMatcher, 静态匹配的位置为 null(全是静态的话整个数组就是 null)
+ * 调用时 {@link CompiledMethodInvocation} 直接按下标走数组, 不再有 List 和类型判断.
+ * 运行时 MethodMatcher 是 {@link TypeOnlyMethodMatcher} 的, 结果按参数类型缓存在 {@link TypeOnlyMatchCache} 里.
+ *
+ * 打开 reuseInvocation 并且链上的拦截器全都是 {@link NonRetainingMethodInterceptor} 时,
+ * MethodInvocation 从 {@link InvocationPool} 里按线程复用, 调用过程中不再 new 它.
+ *
+ * 注: 并没有真的去生成字节码, 每个方法一个链对象, 调用点都在同一份代码里.
+ * @see AdvisedSupport#getCompiledChain(Method, Class)
+ * @author agent on 2026/10/17
+ */
+public final class CompiledInterceptorChain {
+
+    private final Method method;
+
+    private final MethodInterceptor[] interceptors;
+
+    private final MethodMatcher[] dynamicMatchers;
+
+    /** 和 dynamicMatchers 同位置, 只有 TypeOnlyMethodMatcher 的位置不为 null(一个都没有的话整个数组就是 null). **/
+    private final TypeOnlyMatchCache[] typeOnlyMatchCaches;
+
+    /** 负责最后调用目标方法. **/
+    private final TargetInvoker targetInvoker;
+
+    /** 编译时是否要求复用 MethodInvocation. **/
+    private final boolean reuseRequested;
+
+    /** 真的复用: 要求了, 并且拦截器全都不会留着 MethodInvocation. **/
+    private final boolean reuseInvocation;
+
+    private CompiledInterceptorChain(Method method, MethodInterceptor[] interceptors, MethodMatcher[] dynamicMatchers,
+                                     TargetInvoker targetInvoker, boolean reuseRequested) {
+        this.method = method;
+        this.interceptors = interceptors;
+        this.dynamicMatchers = dynamicMatchers;
+        this.typeOnlyMatchCaches = createTypeOnlyMatchCaches(method, dynamicMatchers);
+        this.targetInvoker = targetInvoker;
+        this.reuseRequested = reuseRequested;
+        this.reuseInvocation = (reuseRequested && allNonRetaining(interceptors));
+    }
+
+    /**
+     * 把 AdvisorChainFactory 得到的链编译一下.
+     * @param chain {@link AdvisorChainFactory#getInterceptorsAndDynamicInterceptionAdvice} 的返回值
+     * @param targetInvoker 调用目标方法的方式
+     */
+    public static CompiledInterceptorChain compile(Method method, List<Object> chain, TargetInvoker targetInvoker) {
+        return compile(method, chain, targetInvoker, false);
+    }
+
+    /**
+     * 同上.
+     * @param reuseInvocation 是否按线程复用 MethodInvocation, 拦截器里有不是 {@link NonRetainingMethodInterceptor} 的话不生效
+     */
+    public static CompiledInterceptorChain compile(Method method, List<Object> chain, TargetInvoker targetInvoker,
+                                                   boolean reuseInvocation) {
+        MethodInterceptor[] interceptors = new MethodInterceptor[chain.size()];
+        MethodMatcher[] dynamicMatchers = null;
+        for (int i = 0; i < interceptors.length; i++) {
+            Object interceptorOrInterceptionAdvice = chain.get(i);
+            if (interceptorOrInterceptionAdvice instanceof InterceptorAndDynamicMethodMatcher) {
+                InterceptorAndDynamicMethodMatcher dm = (InterceptorAndDynamicMethodMatcher) interceptorOrInterceptionAdvice;
+                if (dynamicMatchers == null) {
+                    dynamicMatchers = new MethodMatcher[interceptors.length];
+                }
+                interceptors[i] = dm.interceptor;
+                dynamicMatchers[i] = dm.methodMatcher;
+            }
+            else {
+                interceptors[i] = (MethodInterceptor) interceptorOrInterceptionAdvice;
+            }
+        }
+        return new CompiledInterceptorChain(method, interceptors, dynamicMatchers, targetInvoker, reuseInvocation);
+    }
+
+    private static TypeOnlyMatchCache[] createTypeOnlyMatchCaches(Method method, MethodMatcher[] dynamicMatchers) {
+        if (dynamicMatchers == null) {
+            return null;
+        }
+        TypeOnlyMatchCache[] caches = null;
+        for (int i = 0; i < dynamicMatchers.length; i++) {
+            if (dynamicMatchers[i] instanceof TypeOnlyMethodMatcher) {
+                if (caches == null) {
+                    caches = new TypeOnlyMatchCache[dynamicMatchers.length];
+                }
+                caches[i] = new TypeOnlyMatchCache(method, dynamicMatchers[i]);
+            }
+        }
+        return caches;
+    }
+
+    private static boolean allNonRetaining(MethodInterceptor[] interceptors) {
+        for (MethodInterceptor interceptor : interceptors) {
+            if (!(interceptor instanceof NonRetainingMethodInterceptor)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 执行整条链, 最后调用目标方法.
+     * 链是空的话, 连 MethodInvocation 都不用创建了, 直接调目标方法.
+     */
+    public Object invoke(Object proxy, Object target, Object[] arguments, Class<?> targetClass) throws Throwable {
+        if (this.interceptors.length == 0) {
+            return invokeTarget(target, arguments);
+        }
+        if (this.reuseInvocation) {
+            InvocationPool pool = InvocationPool.current();
+            CompiledMethodInvocation invocation = pool.acquire(this, proxy, target, arguments, targetClass);
+            try {
+                return invocation.proceed();
+            }
+            finally {
+                pool.release(invocation);
+            }
+        }
+        return new CompiledMethodInvocation(this, proxy, target, arguments, targetClass).proceed();
+    }
+
+    /**
+     * 第 index 个拦截器的运行时匹配, 那个位置必须有 MethodMatcher.
+     * TypeOnlyMethodMatcher 的查缓存, 其他的照旧每次都调.
+     */
+    boolean matchesAt(int index, Class<?> targetClass, Object[] arguments) {
+        if (this.typeOnlyMatchCaches != null && this.typeOnlyMatchCaches[index] != null) {
+            return this.typeOnlyMatchCaches[index].matches(targetClass, arguments);
+        }
+        return this.dynamicMatchers[index].matches(this.method, targetClass, arguments);
+    }
+
+    /** 链的最后一步: 调用目标方法. **/
+    Object invokeTarget(Object target, Object[] arguments) throws Throwable {
+        return this.targetInvoker.invoke(target, arguments);
+    }
+
+    public Method getMethod() {
+        return this.method;
+    }
+
+    public int size() {
+        return this.interceptors.length;
+    }
+
+    public boolean isReuseRequested() {
+        return this.reuseRequested;
+    }
+
+    /** 调用时是否真的复用 MethodInvocation. **/
+    public boolean isReuseInvocation() {
+        return this.reuseInvocation;
+    }
+
+    MethodInterceptor[] getInterceptors() {
+        return this.interceptors;
+    }
+
+    MethodMatcher[] getDynamicMatchers() {
+        return this.dynamicMatchers;
+    }
+
+}
@@ -0,0 +1,168 @@
+package resource.advised.util;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.MethodMatcher;
+import org.springframework.aop.ProxyMethodInvocation;
+import org.springframework.aop.framework.ReflectiveMethodInvocation;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link CompiledInterceptorChain} 用的 MethodInvocation, 逻辑和 {@link ReflectiveMethodInvocation} 一样,
+ * 只不过拦截器是从定长数组里按下标取的.
+ * 实现 {@link ProxyMethodInvocation} 是因为 AspectJ 的那些 Advice 要求必须是它.
+ * 打开 reuseInvocation 时, 对象会被 {@link InvocationPool} 按线程复用, 所以字段不是 final 的.
+ * @author agent on 2026/10/17
+ */
+class CompiledMethodInvocation implements ProxyMethodInvocation, Cloneable {
+
+    private CompiledInterceptorChain chain;
+
+    private Object proxy;
+
+    private Object target;
+
+    private Object[] arguments;
+
+    private Class<?> targetClass;
+
+    private Map<String, Object> userAttributes;
+
+    /** 当前执行到的拦截器下标, -1 表示还没开始. **/
+    private int currentInterceptorIndex = -1;
+
+    CompiledMethodInvocation(CompiledInterceptorChain chain, Object proxy, Object target,
+                             Object[] arguments, Class<?> targetClass) {
+        this.chain = chain;
+        this.proxy = proxy;
+        this.target = target;
+        this.arguments = arguments;
+        this.targetClass = targetClass;
+    }
+
+    /** 从池里取出来, 重新初始化. **/
+    void reset(CompiledInterceptorChain chain, Object proxy, Object target, Object[] arguments, Class<?> targetClass) {
+        this.chain = chain;
+        this.proxy = proxy;
+        this.target = target;
+        this.arguments = arguments;
+        this.targetClass = targetClass;
+        this.userAttributes = null;
+        this.currentInterceptorIndex = -1;
+    }
+
+    /** 还回池里之前把引用清掉, 别拖着目标对象和参数. **/
+    void clear() {
+        this.chain = null;
+        this.proxy = null;
+        this.target = null;
+        this.arguments = null;
+        this.targetClass = null;
+        this.userAttributes = null;
+    }
+
+    @Override
+    public Object proceed() throws Throwable {
+        MethodInterceptor[] interceptors = this.chain.getInterceptors();
+        /** 拦截器都走完了, 调用目标方法. **/
+        if (++this.currentInterceptorIndex == interceptors.length) {
+            return this.chain.invokeTarget(this.target, this.arguments);
+        }
+        MethodMatcher[] dynamicMatchers = this.chain.getDynamicMatchers();
+        if (dynamicMatchers != null) {
+            MethodMatcher mm = dynamicMatchers[this.currentInterceptorIndex];
+            /** 运行时匹配不上, 跳过这个拦截器. **/
+            if (mm != null && !this.chain.matchesAt(this.currentInterceptorIndex, this.targetClass, this.arguments)) {
+                return proceed();
+            }
+        }
+        return interceptors[this.currentInterceptorIndex].invoke(this);
+    }
+
+    @Override
+    public Method getMethod() {
+        return this.chain.getMethod();
+    }
+
+    @Override
+    public Object[] getArguments() {
+        return this.arguments;
+    }
+
+    @Override
+    public void setArguments(Object... arguments) {
+        this.arguments = arguments;
+    }
+
+    @Override
+    public Object getThis() {
+        return this.target;
+    }
+
+    @Override
+    public AccessibleObject getStaticPart() {
+        return getMethod();
+    }
+
+    @Override
+    public Object getProxy() {
+        return this.proxy;
+    }
+
+    @Override
+    public MethodInvocation invocableClone() {
+        Object[] cloneArguments = this.arguments;
+        if (this.arguments.length > 0) {
+            cloneArguments = new Object[this.arguments.length];
+            System.arraycopy(this.arguments, 0, cloneArguments, 0, this.arguments.length);
+        }
+        return invocableClone(cloneArguments);
+    }
+
+    @Override
+    public MethodInvocation invocableClone(Object... arguments) {
+        if (this.userAttributes == null) {
+            this.userAttributes = new HashMap<>();
+        }
+        try {
+            CompiledMethodInvocation clone = (CompiledMethodInvocation) clone();
+            clone.arguments = arguments;
+            return clone;
+        }
+        catch (CloneNotSupportedException ex) {
+            throw new IllegalStateException(
+                    "Should be able to clone object of type [" + getClass() + "]: " + ex);
+        }
+    }
+
+    @Override
+    public void setUserAttribute(String key, Object value) {
+        if (value != null) {
+            if (this.userAttributes == null) {
+                this.userAttributes = new HashMap<>();
+            }
+            this.userAttributes.put(key, value);
+        }
+        else {
+            if (this.userAttributes != null) {
+                this.userAttributes.remove(key);
+            }
+        }
+    }
+
+    @Override
+    public Object getUserAttribute(String key) {
+        return (this.userAttributes != null ? this.userAttributes.get(key) : null);
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledMethodInvocation: " + getMethod() + "; target is of class [" +
+                (this.target != null ? this.target.getClass().getName() : "null") + "]";
+    }
+
+}
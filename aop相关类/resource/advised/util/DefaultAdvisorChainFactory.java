@@ -6,18 +6,24 @@
 
 package resource.advised.util;
 
+import org.aopalliance.aop.Advice;
 import org.aopalliance.intercept.Interceptor;
 import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.AfterReturningAdvice;
 import org.springframework.aop.Advisor;
 import org.springframework.aop.IntroductionAdvisor;
+import org.springframework.aop.MethodBeforeAdvice;
 import org.springframework.aop.MethodMatcher;
 import org.springframework.aop.PointcutAdvisor;
 import org.springframework.aop.framework.Advised;
 import org.springframework.aop.framework.AdvisorChainFactory;
 import org.springframework.aop.framework.InterceptorAndDynamicMethodMatcher;
 import org.springframework.aop.framework.adapter.AdvisorAdapterRegistry;
-import org.springframework.aop.framework.adapter.GlobalAdvisorAdapterRegistry;
+import org.springframework.aop.framework.adapter.AfterReturningAdviceInterceptor;
+import org.springframework.aop.framework.adapter.MethodBeforeAdviceInterceptor;
 import org.springframework.aop.support.MethodMatchers;
+import resource.adapter.GlobalAdvisorAdapterRegistry;
+import resource.methodinterceptor.FusedAdviceInterceptor;
 
 import java.io.Serializable;
 import java.lang.reflect.Method;
@@ -26,22 +32,40 @@ import java.util.Arrays;
 import java.util.List;
 
 /**
+ * 适配器用的是 {@link GlobalAdvisorAdapterRegistry}: Spring 全局 registry 前面加了一层缓存(自定义的适配器也注册在那里),
+ * 同一个 Advisor 在所有代理、所有方法上拿到的是同一组拦截器.
+ * 打开 fuseAdvice 的话, 链算出来之后再把连续的 before/after-returning 合成一个 {@link FusedAdviceInterceptor}.
  * @author wangzongyao on 2020/5/28
  */
 public class DefaultAdvisorChainFactory implements AdvisorChainFactory, Serializable {
 
+    /** 是否合并连续的 before/after-returning 拦截器, 默认 false. **/
+    private boolean fuseAdvice = false;
+
+    public void setFuseAdvice(boolean fuseAdvice) {
+        this.fuseAdvice = fuseAdvice;
+    }
+
+    public boolean isFuseAdvice() {
+        return this.fuseAdvice;
+    }
+
     @Override
     public List<Object> getInterceptorsAndDynamicInterceptionAdvice(
             Advised config, Method method, Class<?> targetClass) {
 
         // This is somewhat tricky... We have to process introductions first,
         // but we need to preserve order in the ultimate list.
-        List<Object> interceptorList = new ArrayList<>(config.getAdvisors().length);
+        // 只读一次 getAdvisors(): 配置可能正在被并发修改, 两次读到的可能不是同一份.
+        Advisor[] advisors = config.getAdvisors();
+        List<Object> interceptorList = new ArrayList<>(advisors.length);
         Class<?> actualClass = (targetClass != null ? targetClass : method.getDeclaringClass());
-        boolean hasIntroductions = hasMatchingIntroductions(config, actualClass);
+        boolean hasIntroductions = hasMatchingIntroductions(advisors, actualClass);
         AdvisorAdapterRegistry registry = GlobalAdvisorAdapterRegistry.getInstance();
+        /** 和 interceptorList 一一对应: 能合并的位置放它的 Advice, 不能的放 null. 不合并的话不用记. **/
+        List<Advice> fusibleAdvices = (this.fuseAdvice ? new ArrayList<Advice>(advisors.length) : null);
 
-        for (Advisor advisor : config.getAdvisors()) {
+        for (Advisor advisor : advisors) {
             if (advisor instanceof PointcutAdvisor) {
                 // Add it conditionally.
                 PointcutAdvisor pointcutAdvisor = (PointcutAdvisor) advisor;
@@ -55,9 +79,11 @@ public class DefaultAdvisorChainFactory implements AdvisorChainFactory, Serializ
                             for (MethodInterceptor interceptor : interceptors) {
                                 interceptorList.add(new InterceptorAndDynamicMethodMatcher(interceptor, mm));
                             }
+                            addNotFusible(fusibleAdvices, interceptors.length);
                         }
                         else {
                             interceptorList.addAll(Arrays.asList(interceptors));
+                            addFusibleAdvices(fusibleAdvices, advisor, interceptors);
                         }
                     }
                 }
@@ -67,22 +93,78 @@ public class DefaultAdvisorChainFactory implements AdvisorChainFactory, Serializ
                 if (config.isPreFiltered() || ia.getClassFilter().matches(actualClass)) {
                     Interceptor[] interceptors = registry.getInterceptors(advisor);
                     interceptorList.addAll(Arrays.asList(interceptors));
+                    addNotFusible(fusibleAdvices, interceptors.length);
                 }
             }
             else {
-                Interceptor[] interceptors = registry.getInterceptors(advisor);
+                MethodInterceptor[] interceptors = registry.getInterceptors(advisor);
                 interceptorList.addAll(Arrays.asList(interceptors));
+                addFusibleAdvices(fusibleAdvices, advisor, interceptors);
             }
         }
 
-        return interceptorList;
+        return (fusibleAdvices != null ? fuse(interceptorList, fusibleAdvices) : interceptorList);
+    }
+
+    /**
+     * 只有标准适配器适配出来的那两种拦截器才能合并: Advisor 只适配出一个拦截器,
+     * 并且正好是 MethodBeforeAdviceInterceptor / AfterReturningAdviceInterceptor.
+     * 它们持有的 Advice 是私有的, 所以这里直接拿 Advisor 的 Advice.
+     */
+    private static void addFusibleAdvices(List<Advice> fusibleAdvices, Advisor advisor, MethodInterceptor[] interceptors) {
+        if (fusibleAdvices == null) {
+            return;
+        }
+        if (interceptors.length != 1) {
+            addNotFusible(fusibleAdvices, interceptors.length);
+            return;
+        }
+        Advice advice = advisor.getAdvice();
+        MethodInterceptor interceptor = interceptors[0];
+        boolean fusible = (!(advice instanceof MethodInterceptor) &&
+                ((interceptor.getClass() == MethodBeforeAdviceInterceptor.class && advice instanceof MethodBeforeAdvice) ||
+                (interceptor.getClass() == AfterReturningAdviceInterceptor.class && advice instanceof AfterReturningAdvice)));
+        fusibleAdvices.add(fusible ? advice : null);
+    }
+
+    private static void addNotFusible(List<Advice> fusibleAdvices, int count) {
+        if (fusibleAdvices == null) {
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            fusibleAdvices.add(null);
+        }
+    }
+
+    /**
+     * 连续两个及以上能合并的, 换成一个 {@link FusedAdviceInterceptor}; 其余的原样保留, 顺序不变.
+     */
+    private static List<Object> fuse(List<Object> interceptorList, List<Advice> fusibleAdvices) {
+        int size = interceptorList.size();
+        List<Object> fused = new ArrayList<>(size);
+        int start = 0;
+        while (start < size) {
+            int end = start;
+            while (end < size && fusibleAdvices.get(end) != null) {
+                end++;
+            }
+            if (end - start >= 2) {
+                fused.add(FusedAdviceInterceptor.fuse(fusibleAdvices.subList(start, end)));
+                start = end;
+            }
+            else {
+                fused.add(interceptorList.get(start));
+                start++;
+            }
+        }
+        return fused;
     }
 
     /**
      * Determine whether the Advisors contain matching introductions.
      */
-    private static boolean hasMatchingIntroductions(Advised config, Class<?> actualClass) {
-        for (Advisor advisor : config.getAdvisors()) {
+    private static boolean hasMatchingIntroductions(Advisor[] advisors, Class<?> actualClass) {
+        for (Advisor advisor : advisors) {
             if (advisor instanceof IntroductionAdvisor) {
                 IntroductionAdvisor ia = (IntroductionAdvisor) advisor;
                 if (ia.getClassFilter().matches(actualClass)) {
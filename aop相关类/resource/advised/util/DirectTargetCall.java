@@ -0,0 +1,79 @@
+package resource.advised.util;
+
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+
+/**
+ * 零拦截器的快速通道: 一个方法没有任何拦截器, 并且 TargetSource 是静态的,
+ * 那每次调用其实就是 "在同一个目标对象上调这个方法", 不需要查 methodCache、不需要 getTarget()/releaseTarget()、不需要 MethodInvocation.
+ * 于是把目标对象直接绑进 MethodHandle(bindTo), 调用时只剩一次 invokeExact.
+ *
+ * 同时也记录 "这个方法有拦截器, 走不了快速通道", 这样每个方法只判断一次.
+ * 两种结果都带着计算时的快照版本号, 配置变了(Advisor、TargetSource) 就重新判断.
+ * @see resource.advised.AdvisedSupport#getDirectTargetCall(Method, Class)
+ * @author agent on 2026/10/17
+ */
+public final class DirectTargetCall {
+
+    private static final Object[] EMPTY_ARGS = new Object[0];
+
+    private final long version;
+
+    private final Method method;
+
+    /** 绑好目标对象的 (Object[])Object; 走不了快速通道时为 null. **/
+    private final MethodHandle boundHandle;
+
+    private DirectTargetCall(long version, Method method, MethodHandle boundHandle) {
+        this.version = version;
+        this.method = method;
+        this.boundHandle = boundHandle;
+    }
+
+    /**
+     * 绑定到目标对象. MethodHandle 解析不出来(比如访问权限问题、模块没开放) 时, 当作走不了快速通道.
+     */
+    public static DirectTargetCall forTarget(Method method, Object target, long version) {
+        try {
+            ReflectionUtils.makeAccessible(method);
+            int parameterCount = method.getParameterTypes().length;
+            MethodHandle boundHandle = MethodHandles.lookup().unreflect(method)
+                    .bindTo(target)
+                    .asType(MethodType.genericMethodType(parameterCount))
+                    .asSpreader(Object[].class, parameterCount);
+            return new DirectTargetCall(version, method, boundHandle);
+        }
+        catch (IllegalAccessException | RuntimeException ex) {
+            return notDirect(method, version);
+        }
+    }
+
+    /** 这个方法有拦截器(或者 TargetSource 不是静态的), 走不了快速通道. **/
+    public static DirectTargetCall notDirect(Method method, long version) {
+        return new DirectTargetCall(version, method, null);
+    }
+
+    public long getVersion() {
+        return this.version;
+    }
+
+    public Method getMethod() {
+        return this.method;
+    }
+
+    public boolean isDirect() {
+        return (this.boundHandle != null);
+    }
+
+    /**
+     * 直接调用目标方法. 目标方法抛的异常原样抛出, void 方法返回 null.
+     */
+    public Object invoke(Object[] arguments) throws Throwable {
+        return (Object) this.boundHandle.invokeExact(arguments != null ? arguments : EMPTY_ARGS);
+    }
+
+}
@@ -0,0 +1,59 @@
+package resource.advised.util;
+
+/**
+ * 每个线程一个的 {@link CompiledMethodInvocation} 池.
+ * 代理方法里再调代理方法(嵌套调用) 很常见, 所以按调用深度存: 第 n 层嵌套用第 n 个对象, 调用结束还回去.
+ * 嵌套超过 {@link #MAX_DEPTH} 层的不进池, 照旧 new.
+ * ThreadLocal 是跟着线程走的(虚拟线程也是各自一份), 所以不会有两个线程拿到同一个对象.
+ * @see CompiledInterceptorChain#invoke(Object, Object, Object[], Class)
+ * @author agent on 2026/10/17
+ */
+final class InvocationPool {
+
+    private static final int MAX_DEPTH = 16;
+
+    private static final ThreadLocal<InvocationPool> currentPool = new ThreadLocal<InvocationPool>() {
+        @Override
+        protected InvocationPool initialValue() {
+            return new InvocationPool();
+        }
+    };
+
+    private final CompiledMethodInvocation[] invocations = new CompiledMethodInvocation[MAX_DEPTH];
+
+    private int depth = 0;
+
+    private InvocationPool() {
+    }
+
+    static InvocationPool current() {
+        return currentPool.get();
+    }
+
+    /** 取一个初始化好的 MethodInvocation. **/
+    CompiledMethodInvocation acquire(CompiledInterceptorChain chain, Object proxy, Object target,
+                                     Object[] arguments, Class<?> targetClass) {
+        if (this.depth == MAX_DEPTH) {
+            return new CompiledMethodInvocation(chain, proxy, target, arguments, targetClass);
+        }
+        CompiledMethodInvocation invocation = this.invocations[this.depth];
+        if (invocation == null) {
+            invocation = new CompiledMethodInvocation(chain, proxy, target, arguments, targetClass);
+            this.invocations[this.depth] = invocation;
+        }
+        else {
+            invocation.reset(chain, proxy, target, arguments, targetClass);
+        }
+        this.depth++;
+        return invocation;
+    }
+
+    /** 调用结束, 还回去. 不是池里的(嵌套太深 new 出来的) 什么也不做. **/
+    void release(CompiledMethodInvocation invocation) {
+        if (this.depth > 0 && this.invocations[this.depth - 1] == invocation) {
+            invocation.clear();
+            this.depth--;
+        }
+    }
+
+}
@@ -0,0 +1,134 @@
+package resource.advised.util;
+
+import org.springframework.aop.framework.AdvisorChainFactory;
+import resource.advised.AdvisedSupport;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 冻结代理的方法分派表.
+ * 配置冻结之后, 代理会被调用到的方法在创建代理时就已经确定了(代理的接口 + 目标类的 public 方法),
+ * 于是给每个方法分配一个从 0 开始的连续 id, 拦截器链按 id 放进数组, 一次性建好.
+ * 调用时: ↓
+ *     Method -> id: 开放寻址的 int[] 槽位, 用 Method 自己的 hashCode, 不需要 new MethodCacheKey.
+ *     id -> 链: 直接数组下标.
+ * 整个过程没有对象分配, 也不碰 ConcurrentHashMap.
+ * {@link resource.aopproxyfactory.aopproxyfactory.SelectiveCglibAopProxy} 更进一步: 每个有拦截器的方法一个 Callback,
+ * Callback 自己记着 id, 调用时连 Method -> id 这一步也省了, 直接按 id 取编译好的链({@link #getCompiledChain(int)}).
+ * 表里没有的方法(比如 Object 的方法、非 public 方法), {@link #indexOf(Method)} 返回 -1, 调用方退回 methodCache.
+ * @see AdvisedSupport#initDispatchTable()
+ * @author agent on 2026/10/17
+ */
+public final class MethodDispatchTable {
+
+    /** 下标就是 method id. **/
+    private final Method[] methods;
+
+    /** 下标就是 method id, 元素是这个方法对应的拦截器链. **/
+    private final List<Object>[] chains;
+
+    /** 下标就是 method id, 编译过的链, 第一次用到时才编译. **/
+    private final AtomicReferenceArray<CompiledInterceptorChain> compiledChains;
+
+    /** 开放寻址的槽位, 存的是 id + 1, 0 表示空槽. **/
+    private final int[] slots;
+
+    private final int mask;
+
+    /** 建表时用的 targetClass, 调用时传进来的对不上就不能用这张表. **/
+    private final Class<?> targetClass;
+
+    /** 建表时配置快照的版本号, 和当前版本对不上就不能用这张表. **/
+    private final long version;
+
+    @SuppressWarnings("unchecked")
+    private MethodDispatchTable(Method[] methods, Class<?> targetClass, long version) {
+        this.methods = methods;
+        this.chains = new List[methods.length];
+        this.compiledChains = new AtomicReferenceArray<>(methods.length);
+        this.targetClass = targetClass;
+        this.version = version;
+        /** 槽位数取 >= 2 倍方法数的 2 的幂, 负载因子不超过 0.5. **/
+        int capacity = Integer.highestOneBit(Math.max(methods.length, 1) * 2 - 1) << 1;
+        this.slots = new int[capacity];
+        this.mask = capacity - 1;
+        for (int id = 0; id < methods.length; id++) {
+            int slot = spread(methods[id].hashCode()) & this.mask;
+            while (this.slots[slot] != 0) {
+                slot = (slot + 1) & this.mask;
+            }
+            this.slots[slot] = id + 1;
+        }
+    }
+
+    /**
+     * 建表: 给方法分配 id, 并用 chainFactory 把每个方法的链都算出来.
+     * @param methods 代理可能被调用到的方法, 不能有重复(equals 意义上)
+     * @param version 建表时配置快照的版本号
+     */
+    public static MethodDispatchTable build(AdvisedSupport config, Collection<Method> methods,
+                                            Class<?> targetClass, long version) {
+        MethodDispatchTable table = new MethodDispatchTable(
+                methods.toArray(new Method[methods.size()]), targetClass, version);
+        AdvisorChainFactory chainFactory = config.getAdvisorChainFactory();
+        for (int id = 0; id < table.methods.length; id++) {
+            table.chains[id] = chainFactory.getInterceptorsAndDynamicInterceptionAdvice(
+                    config, table.methods[id], targetClass);
+        }
+        return table;
+    }
+
+    /**
+     * Method -> id, 表里没有返回 -1.
+     * 代理每次传进来的一般是同一个 Method 实例, 所以先比 ==, 比不上再 equals.
+     */
+    public int indexOf(Method method) {
+        for (int slot = spread(method.hashCode()) & this.mask; ; slot = (slot + 1) & this.mask) {
+            int idPlusOne = this.slots[slot];
+            if (idPlusOne == 0) {
+                return -1;
+            }
+            Method candidate = this.methods[idPlusOne - 1];
+            if (candidate == method || candidate.equals(method)) {
+                return idPlusOne - 1;
+            }
+        }
+    }
+
+    public List<Object> getChain(int methodId) {
+        return this.chains[methodId];
+    }
+
+    /** 编译过的链, 还没编译时为 null. **/
+    public CompiledInterceptorChain getCompiledChain(int methodId) {
+        return this.compiledChains.get(methodId);
+    }
+
+    public void setCompiledChain(int methodId, CompiledInterceptorChain compiledChain) {
+        this.compiledChains.set(methodId, compiledChain);
+    }
+
+    public Method getMethod(int methodId) {
+        return this.methods[methodId];
+    }
+
+    public int size() {
+        return this.methods.length;
+    }
+
+    public Class<?> getTargetClass() {
+        return this.targetClass;
+    }
+
+    public long getVersion() {
+        return this.version;
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+}
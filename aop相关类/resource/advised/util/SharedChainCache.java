@@ -0,0 +1,193 @@
+package resource.advised.util;
+
+import org.springframework.aop.Advisor;
+import org.springframework.aop.framework.AdvisorChainFactory;
+import resource.advised.AdvisedSupport;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 全局共享的拦截器链缓存.
+ * 每个代理都有自己的 ProxyFactory, 也就有自己的 methodCache, prototype/request 作用域的 Bean 每创建一个代理,
+ * 同样的链就要再算一遍、再存一份. 但是 {@link DefaultAdvisorChainFactory} 算出来的链只取决于: ↓
+ *     (targetClass, Advisor 列表(按引用), preFiltered, fuseAdvice, method)
+ * 所以配置完全一样的代理完全可以共用一条链.
+ *
+ * 链是被弱引用着的: 只要还有代理的 methodCache 引用着这条链它就在, 都没人用了就会被 GC 回收,
+ * 对应的 key 在下次访问时清理掉, 不会拖住 Class 不让卸载.
+ * @see AdvisedSupport#getInterceptorsAndDynamicInterceptionAdvice(Method, Class)
+ * @author agent on 2026/10/17
+ */
+public final class SharedChainCache {
+
+    private static final SharedChainCache INSTANCE = new SharedChainCache();
+
+    private final Map<ChainKey, ChainReference> chains = new ConcurrentHashMap<>(256);
+
+    private final ReferenceQueue<List<Object>> queue = new ReferenceQueue<>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    public static SharedChainCache getInstance() {
+        return INSTANCE;
+    }
+
+    private SharedChainCache() {
+    }
+
+    /**
+     * 这个 AdvisorChainFactory 算出来的链能不能共享: 只有两个默认实现(这里的和 Spring 的) 可以,
+     * 它们算出来的链只取决于 ChainKey 里的那几样; 自定义的 AdvisorChainFactory 可能依赖别的配置.
+     */
+    public static boolean isShareable(AdvisorChainFactory chainFactory) {
+        Class<?> factoryClass = chainFactory.getClass();
+        return (factoryClass == DefaultAdvisorChainFactory.class ||
+                factoryClass == org.springframework.aop.framework.DefaultAdvisorChainFactory.class);
+    }
+
+    /**
+     * 取共享的链, 没有的话用 chainFactory 算一条放进去. 调用方先用 {@link #isShareable} 判断过.
+     * @param advisors 调用方读到的配置快照里的 Advisor 数组
+     */
+    public List<Object> getChain(AdvisedSupport config, Advisor[] advisors, Method method, Class<?> targetClass) {
+        purgeStaleEntries();
+        AdvisorChainFactory chainFactory = config.getAdvisorChainFactory();
+        boolean fuseAdvice = (chainFactory instanceof DefaultAdvisorChainFactory &&
+                ((DefaultAdvisorChainFactory) chainFactory).isFuseAdvice());
+        ChainKey key = new ChainKey(targetClass, advisors, config.isPreFiltered(), fuseAdvice, method);
+        ChainReference ref = this.chains.get(key);
+        List<Object> chain = (ref != null ? ref.get() : null);
+        if (chain != null) {
+            this.hitCount.incrementAndGet();
+            return chain;
+        }
+        this.missCount.incrementAndGet();
+        chain = chainFactory.getInterceptorsAndDynamicInterceptionAdvice(config, method, targetClass);
+        /**
+         * 算的过程中配置被改了的话, 算出来的链不一定对应传进来的 advisors, 这种链只给自己用, 不共享.
+         * 快照每次发布都是新数组, 所以比引用就够了.
+         */
+        if (config.getAdvisors() == advisors) {
+            this.chains.put(key, new ChainReference(key, chain, this.queue));
+        }
+        return chain;
+    }
+
+    public long getHitCount() {
+        return this.hitCount.get();
+    }
+
+    public long getMissCount() {
+        return this.missCount.get();
+    }
+
+    /** 当前还活着的(没被回收的)共享链的条数, 近似值. **/
+    public int size() {
+        purgeStaleEntries();
+        return this.chains.size();
+    }
+
+    public void clear() {
+        this.chains.clear();
+        this.hitCount.set(0);
+        this.missCount.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "SharedChainCache: " + this.chains.size() + " chains, " +
+                this.hitCount.get() + " hits, " + this.missCount.get() + " misses";
+    }
+
+    /** 链被回收之后, 把对应的 key 也删掉. **/
+    private void purgeStaleEntries() {
+        ChainReference ref;
+        while ((ref = (ChainReference) this.queue.poll()) != null) {
+            this.chains.remove(ref.key, ref);
+        }
+    }
+
+
+    private static final class ChainReference extends WeakReference<List<Object>> {
+
+        private final ChainKey key;
+
+        ChainReference(ChainKey key, List<Object> chain, ReferenceQueue<List<Object>> queue) {
+            super(chain, queue);
+            this.key = key;
+        }
+    }
+
+
+    /**
+     * (targetClass, advisors, preFiltered, fuseAdvice, method).
+     * advisors 按引用比较: 同一批 Advisor 实例才算一样, 和 Advisor 自己的 equals 无关.
+     */
+    private static final class ChainKey {
+
+        private final Class<?> targetClass;
+
+        private final Advisor[] advisors;
+
+        private final boolean preFiltered;
+
+        /** 合并过的链和没合并的链不能混用. **/
+        private final boolean fuseAdvice;
+
+        private final Method method;
+
+        private final int hashCode;
+
+        ChainKey(Class<?> targetClass, Advisor[] advisors, boolean preFiltered, boolean fuseAdvice, Method method) {
+            this.targetClass = targetClass;
+            this.advisors = advisors;
+            this.preFiltered = preFiltered;
+            this.fuseAdvice = fuseAdvice;
+            this.method = method;
+            int result = method.hashCode();
+            result = 31 * result + (targetClass != null ? targetClass.hashCode() : 0);
+            for (Advisor advisor : advisors) {
+                result = 31 * result + System.identityHashCode(advisor);
+            }
+            result = 31 * result + (preFiltered ? 1 : 0);
+            this.hashCode = 31 * result + (fuseAdvice ? 1 : 0);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof ChainKey)) {
+                return false;
+            }
+            ChainKey otherKey = (ChainKey) other;
+            if (this.hashCode != otherKey.hashCode || this.targetClass != otherKey.targetClass ||
+                    this.preFiltered != otherKey.preFiltered || this.fuseAdvice != otherKey.fuseAdvice ||
+                    this.advisors.length != otherKey.advisors.length ||
+                    !this.method.equals(otherKey.method)) {
+                return false;
+            }
+            for (int i = 0; i < this.advisors.length; i++) {
+                if (this.advisors[i] != otherKey.advisors[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+    }
+
+}
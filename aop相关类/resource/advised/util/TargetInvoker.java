@@ -0,0 +1,106 @@
+package resource.advised.util;
+
+import org.springframework.aop.support.AopUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+
+/**
+ * 拦截器链的最后一步: 调用目标方法.
+ * 两种实现: ↓
+ * <ul>
+ *     <li>{@link ReflectiveTargetInvoker}: 就是原来的 Method.invoke, 也就是 {@link AopUtils#invokeJoinpointUsingReflection}.</li>
+ *     <li>{@link MethodHandleTargetInvoker}: 每个方法解析一次 MethodHandle, 之后一直用它.</li>
+ * </ul>
+ * 用哪个由 AdvisedSupport 的 methodHandleInvocation 决定, 方便线上 A/B.
+ * @see resource.advised.AdvisedSupport#getTargetInvoker(Method)
+ * @author agent on 2026/10/17
+ */
+public abstract class TargetInvoker {
+
+    private final Method method;
+
+    TargetInvoker(Method method) {
+        this.method = method;
+    }
+
+    public Method getMethod() {
+        return this.method;
+    }
+
+    public abstract Object invoke(Object target, Object[] arguments) throws Throwable;
+
+    /** 是否是 MethodHandle 方式. **/
+    public boolean isMethodHandle() {
+        return false;
+    }
+
+    /**
+     * 创建 TargetInvoker, MethodHandle 解析不出来时退回反射.
+     * 解析不出来不只是 IllegalAccessException: makeAccessible 在模块不开放时会抛 InaccessibleObjectException,
+     * 有 SecurityManager 时会抛 SecurityException, 都是 RuntimeException.
+     */
+    public static TargetInvoker forMethod(Method method, boolean useMethodHandle) {
+        if (useMethodHandle) {
+            try {
+                return new MethodHandleTargetInvoker(method);
+            }
+            catch (IllegalAccessException | RuntimeException ex) {
+                // 退回反射调用.
+            }
+        }
+        return new ReflectiveTargetInvoker(method);
+    }
+
+
+    /**
+     * 反射调用.
+     */
+    static class ReflectiveTargetInvoker extends TargetInvoker {
+
+        ReflectiveTargetInvoker(Method method) {
+            super(method);
+        }
+
+        @Override
+        public Object invoke(Object target, Object[] arguments) throws Throwable {
+            return AopUtils.invokeJoinpointUsingReflection(target, getMethod(), arguments);
+        }
+    }
+
+
+    /**
+     * MethodHandle 调用.
+     * MethodHandle 被适配成了 (Object, Object[])Object 的形状, 所以可以直接 invokeExact,
+     * 原始类型的拆箱/装箱由 asType 搞定, void 方法返回 null. 目标方法抛的异常原样抛出, 不会包一层 InvocationTargetException.
+     */
+    static class MethodHandleTargetInvoker extends TargetInvoker {
+
+        private static final Object[] EMPTY_ARGS = new Object[0];
+
+        private final MethodHandle methodHandle;
+
+        MethodHandleTargetInvoker(Method method) throws IllegalAccessException {
+            super(method);
+            ReflectionUtils.makeAccessible(method);
+            int parameterCount = method.getParameterTypes().length;
+            this.methodHandle = MethodHandles.lookup().unreflect(method)
+                    .asType(MethodType.genericMethodType(parameterCount + 1))
+                    .asSpreader(Object[].class, parameterCount);
+        }
+
+        @Override
+        public boolean isMethodHandle() {
+            return true;
+        }
+
+        @Override
+        public Object invoke(Object target, Object[] arguments) throws Throwable {
+            return (Object) this.methodHandle.invokeExact(target, (arguments != null ? arguments : EMPTY_ARGS));
+        }
+    }
+
+}
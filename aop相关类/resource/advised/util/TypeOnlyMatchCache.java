@@ -0,0 +1,85 @@
+package resource.advised.util;
+
+import org.springframework.aop.MethodMatcher;
+import resource.pointcut.TypeOnlyMethodMatcher;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+/**
+ * 链上某一个位置的 {@link TypeOnlyMethodMatcher} 的结果缓存, key 是 (targetClass, 每个参数的类).
+ * 一个调用点上见到的参数类型一般就那么一两种, 所以用一个很小的数组挨个比, 比的时候直接拿参数的 getClass(),
+ * 不用为了查缓存再 new 一个 key.
+ * 见过的类型组合超过 {@link #MAX_ENTRIES} 种就不再往里加了, 多出来的照旧每次调 matcher.
+ * 数组是整个替换的(copy-on-write), 并发时最多丢掉一条, 下次再算.
+ * @author agent on 2026/10/17
+ */
+final class TypeOnlyMatchCache {
+
+    private static final int MAX_ENTRIES = 8;
+
+    private static final Entry[] NO_ENTRIES = new Entry[0];
+
+    private final Method method;
+
+    private final MethodMatcher methodMatcher;
+
+    private volatile Entry[] entries = NO_ENTRIES;
+
+    TypeOnlyMatchCache(Method method, MethodMatcher methodMatcher) {
+        this.method = method;
+        this.methodMatcher = methodMatcher;
+    }
+
+    boolean matches(Class<?> targetClass, Object[] arguments) {
+        Entry[] current = this.entries;
+        for (Entry entry : current) {
+            if (entry.isFor(targetClass, arguments)) {
+                return entry.matches;
+            }
+        }
+        boolean matches = this.methodMatcher.matches(this.method, targetClass, arguments);
+        if (current.length < MAX_ENTRIES) {
+            Entry[] next = Arrays.copyOf(current, current.length + 1);
+            next[current.length] = new Entry(targetClass, arguments, matches);
+            this.entries = next;
+        }
+        return matches;
+    }
+
+
+    /** 一种类型组合和它的结果. 参数为 null 的位置, 类型记为 null. **/
+    private static final class Entry {
+
+        private final Class<?> targetClass;
+
+        private final Class<?>[] argumentTypes;
+
+        private final boolean matches;
+
+        Entry(Class<?> targetClass, Object[] arguments, boolean matches) {
+            this.targetClass = targetClass;
+            int length = (arguments != null ? arguments.length : 0);
+            this.argumentTypes = new Class<?>[length];
+            for (int i = 0; i < length; i++) {
+                this.argumentTypes[i] = (arguments[i] != null ? arguments[i].getClass() : null);
+            }
+            this.matches = matches;
+        }
+
+        boolean isFor(Class<?> targetClass, Object[] arguments) {
+            int length = (arguments != null ? arguments.length : 0);
+            if (targetClass != this.targetClass || length != this.argumentTypes.length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                Object argument = arguments[i];
+                if ((argument != null ? argument.getClass() : null) != this.argumentTypes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,471 @@
+package resource.aopproxyfactory.aopproxyfactory;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.aop.AopInvocationException;
+import org.springframework.aop.RawTargetAccess;
+import org.springframework.aop.SpringProxy;
+import org.springframework.aop.framework.Advised;
+import org.springframework.aop.framework.AopConfigException;
+import org.springframework.aop.framework.AopProxy;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.cglib.core.CodeGenerationException;
+import org.springframework.cglib.core.SpringNamingPolicy;
+import org.springframework.cglib.proxy.Callback;
+import org.springframework.cglib.proxy.CallbackFilter;
+import org.springframework.cglib.proxy.Dispatcher;
+import org.springframework.cglib.proxy.Enhancer;
+import org.springframework.cglib.proxy.Factory;
+import org.springframework.cglib.proxy.MethodInterceptor;
+import org.springframework.cglib.proxy.MethodProxy;
+import org.springframework.cglib.proxy.NoOp;
+import org.springframework.core.SmartClassLoader;
+import org.springframework.objenesis.SpringObjenesis;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+import resource.advised.AdvisedSupport;
+import resource.advised.util.CompiledInterceptorChain;
+import resource.advised.util.DirectTargetCall;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 只重写 "有拦截器" 的方法的 Cglib 代理.
+ * ObjenesisCglibAopProxy 生成的子类会把每个能重写的方法都交给 DynamicAdvisedInterceptor, 哪怕没有任何 Advisor 匹配它,
+ * 每次调用 getter 这种方法也要去查一遍链.
+ * 这里在生成子类时, 用 {@link CallbackFilter} 按方法分流: ↓
+ *     链不为空: {@link ChainInterceptor}, 走编译过的 {@link CompiledInterceptorChain}.
+ *     链为空, 返回类型不可能是目标对象: {@link Dispatcher}, 直接在目标对象上调用, 不经过任何拦截器.
+ *     链为空, 但返回值可能是目标对象自己(return this): 一个很薄的拦截器, 把返回的目标对象换成代理.
+ * 链在创建代理时就已经定了: 配置里的 Advisor 就是 AbstractAdvisorAutoProxyCreator#findEligibleAdvisors 筛出来的那些,
+ * 每个方法匹不匹配, 在生成子类时算一次.
+ *
+ * 所以要求(见 {@link #isApplicable}): ↓
+ *     配置打开了 selectiveProxy 和 compileChain, 并且 frozen: Advisor 之后不能再变, 否则没重写的方法就再也拦截不到了.
+ *     TargetSource 是静态的: 目标对象只取一次, Dispatcher 一直返回它.
+ *     不 exposeProxy: 没重写的方法没地方设置 AopContext.
+ * 不满足的话还是走原来的 AopProxyFactory.
+ * @see resource.creator.AbstractAutoProxyCreator#setSelectiveProxy(boolean)
+ * @author agent on 2026/10/17
+ */
+public class SelectiveCglibAopProxy implements AopProxy {
+
+    private static final int AOP_PROXY = 0;
+
+    private static final int DISPATCH_TARGET = 1;
+
+    private static final int INVOKE_TARGET = 2;
+
+    private static final int DISPATCH_ADVISED = 3;
+
+    private static final int INVOKE_EQUALS = 4;
+
+    private static final int INVOKE_HASHCODE = 5;
+
+    private static final int NO_OVERRIDE = 6;
+
+    /** 分派表里的方法: Callback 下标 = 这个数 + method id. **/
+    private static final int FIXED_CHAIN_BASE = 7;
+
+    private static final Log logger = LogFactory.getLog(SelectiveCglibAopProxy.class);
+
+    private static final SpringObjenesis objenesis = new SpringObjenesis();
+
+    private final AdvisedSupport advised;
+
+    /** 静态的 TargetSource, 创建代理时取一次就够了. **/
+    private final Object target;
+
+    public SelectiveCglibAopProxy(AdvisedSupport config) throws AopConfigException {
+        Assert.notNull(config, "AdvisedSupport must not be null");
+        if (!isApplicable(config)) {
+            throw new AopConfigException("Selective proxy requires a frozen, chain-compiling configuration " +
+                    "with a static TargetSource, a proxyable target class and exposeProxy disabled");
+        }
+        this.advised = config;
+        /** 配置已经冻结, 先把分派表建好, 生成子类时的 CallbackFilter 和之后的调用都直接查表. **/
+        config.initDispatchTable();
+        try {
+            this.target = config.getTargetSource().getTarget();
+        }
+        catch (Exception ex) {
+            throw new AopConfigException("Unable to obtain target from static TargetSource", ex);
+        }
+    }
+
+    /**
+     * 能不能用这种代理: 打开了 selectiveProxy 和 compileChain、frozen、静态 TargetSource、不 exposeProxy,
+     * 并且原来的 AopProxyFactory 也会选择基于类的代理(目标类不是接口、不是 JDK 代理、不是 Cglib 代理、不是 final 的).
+     */
+    public static boolean isApplicable(AdvisedSupport config) {
+        if (!config.isSelectiveProxy() || !config.isCompileChain() || !config.isFrozen() || config.isExposeProxy() ||
+                !config.getTargetSource().isStatic()) {
+            return false;
+        }
+        if (!config.isOptimize() && !config.isProxyTargetClass() && !hasNoUserSuppliedProxyInterfaces(config)) {
+            return false;
+        }
+        Class<?> targetClass = config.getTargetClass();
+        return (targetClass != null && !targetClass.isInterface() && !Proxy.isProxyClass(targetClass) &&
+                !ClassUtils.isCglibProxyClass(targetClass) && !Modifier.isFinal(targetClass.getModifiers()));
+    }
+
+    private static boolean hasNoUserSuppliedProxyInterfaces(AdvisedSupport config) {
+        Class<?>[] ifcs = config.getProxiedInterfaces();
+        return (ifcs.length == 0 || (ifcs.length == 1 && SpringProxy.class.isAssignableFrom(ifcs[0])));
+    }
+
+    @Override
+    public Object getProxy() {
+        return getProxy(null);
+    }
+
+    @Override
+    public Object getProxy(ClassLoader classLoader) {
+        Class<?> targetClass = this.advised.getTargetClass();
+        try {
+            Enhancer enhancer = new Enhancer();
+            if (classLoader != null) {
+                enhancer.setClassLoader(classLoader);
+                if (classLoader instanceof SmartClassLoader &&
+                        ((SmartClassLoader) classLoader).isClassReloadable(targetClass)) {
+                    enhancer.setUseCache(false);
+                }
+            }
+            enhancer.setSuperclass(targetClass);
+            enhancer.setInterfaces(getProxiedInterfaces());
+            enhancer.setNamingPolicy(SpringNamingPolicy.INSTANCE);
+
+            Callback[] callbacks = getCallbacks();
+            Class<?>[] types = new Class<?>[callbacks.length];
+            for (int i = 0; i < types.length; i++) {
+                types[i] = callbacks[i].getClass();
+            }
+            enhancer.setCallbackFilter(new SelectiveCallbackFilter(this.advised));
+            enhancer.setCallbackTypes(types);
+            return createProxyInstance(enhancer.createClass(), enhancer.getUseCache(), callbacks);
+        }
+        catch (CodeGenerationException | IllegalArgumentException ex) {
+            throw new AopConfigException("Could not generate CGLIB subclass of " + targetClass.getName() +
+                    ": Common causes of this problem include using a final class or a non-visible class", ex);
+        }
+    }
+
+    /** 和 ObjenesisCglibAopProxy 一样: 先用 Objenesis 绕过构造器, 不行再用默认构造器. **/
+    private Object createProxyInstance(Class<?> proxyClass, boolean useCache, Callback[] callbacks) {
+        Object proxy = null;
+        if (objenesis.isWorthTrying()) {
+            try {
+                proxy = objenesis.newInstance(proxyClass, useCache);
+            }
+            catch (Throwable ex) {
+                logger.debug("Unable to instantiate proxy using Objenesis, " +
+                        "falling back to regular proxy construction", ex);
+            }
+        }
+        if (proxy == null) {
+            try {
+                proxy = ReflectionUtils.accessibleConstructor(proxyClass).newInstance();
+            }
+            catch (Throwable ex) {
+                throw new AopConfigException("Unable to instantiate proxy using Objenesis, " +
+                        "and regular proxy instantiation via default constructor fails as well", ex);
+            }
+        }
+        ((Factory) proxy).setCallbacks(callbacks);
+        return proxy;
+    }
+
+    /** 配置的接口 + SpringProxy + Advised(opaque 时不加). **/
+    private Class<?>[] getProxiedInterfaces() {
+        List<Class<?>> interfaces = new ArrayList<>(Arrays.asList(this.advised.getProxiedInterfaces()));
+        if (!this.advised.isInterfaceProxied(SpringProxy.class)) {
+            interfaces.add(SpringProxy.class);
+        }
+        if (!this.advised.isOpaque() && !this.advised.isInterfaceProxied(Advised.class)) {
+            interfaces.add(Advised.class);
+        }
+        return interfaces.toArray(new Class<?>[interfaces.size()]);
+    }
+
+    /**
+     * 前 {@link #FIXED_CHAIN_BASE} 个和上面的常量一一对应, 后面是分派表里每个方法一个:
+     * 有拦截器的是记着 method id 的 {@link FixedChainInterceptor}, 没有的用不到, 占位用通用的 ChainInterceptor.
+     */
+    private Callback[] getCallbacks() {
+        ChainInterceptor chainInterceptor = new ChainInterceptor(this.advised, this.target);
+        int methodCount = this.advised.getMethodCount();
+        Callback[] callbacks = new Callback[FIXED_CHAIN_BASE + methodCount];
+        callbacks[AOP_PROXY] = chainInterceptor;
+        callbacks[DISPATCH_TARGET] = new TargetDispatcher(this.target);
+        callbacks[INVOKE_TARGET] = new UnadvisedInterceptor(this.advised, this.target);
+        callbacks[DISPATCH_ADVISED] = new AdvisedDispatcher(this.advised);
+        callbacks[INVOKE_EQUALS] = new EqualsInterceptor(this.advised, this.target);
+        callbacks[INVOKE_HASHCODE] = new HashCodeInterceptor(this.advised);
+        callbacks[NO_OVERRIDE] = NoOp.INSTANCE;
+        Class<?> targetClass = this.advised.getTargetClass();
+        for (int methodId = 0; methodId < methodCount; methodId++) {
+            boolean advised = !this.advised.getInterceptorsAndDynamicInterceptionAdvice(
+                    this.advised.getMethod(methodId), targetClass).isEmpty();
+            callbacks[FIXED_CHAIN_BASE + methodId] = (advised ?
+                    new FixedChainInterceptor(chainInterceptor, methodId) : chainInterceptor);
+        }
+        return callbacks;
+    }
+
+    /**
+     * 和 CglibAopProxy 一样: 方法返回了目标对象自己, 换成代理; 原始类型的方法返回了 null, 报错.
+     */
+    private static Object processReturnType(Object proxy, Object target, Method method, Object retVal) {
+        if (retVal != null && retVal == target &&
+                !RawTargetAccess.class.isAssignableFrom(method.getDeclaringClass())) {
+            retVal = proxy;
+        }
+        Class<?> returnType = method.getReturnType();
+        if (retVal == null && returnType != Void.TYPE && returnType.isPrimitive()) {
+            throw new AopInvocationException(
+                    "Null return value from advice does not match primitive return type for: " + method);
+        }
+        return retVal;
+    }
+
+
+    @Override
+    public boolean equals(Object other) {
+        return (this == other || (other instanceof SelectiveCglibAopProxy &&
+                this.advised == ((SelectiveCglibAopProxy) other).advised));
+    }
+
+    @Override
+    public int hashCode() {
+        return SelectiveCglibAopProxy.class.hashCode() * 13 + this.advised.getTargetSource().hashCode();
+    }
+
+
+    /**
+     * 方法 -> 用哪个 Callback. 生成子类时每个方法调一次.
+     * Cglib 按 (父类, 接口, CallbackFilter...) 缓存生成的类, 所以 equals 要保证: 相等的两个 filter 对每个方法的分流结果一样.
+     * Advisor 一样(自动代理时同一个类的 Bean 拿到的就是同一批 Advisor)、preFiltered 一样, 分流结果就一样:
+     * preFiltered 决定了要不要再用 ClassFilter 筛一遍, 同一批 Advisor 也可能筛出不同的拦截器.
+     * 接口也要一样: method id 是按 接口方法 + 目标类方法 的顺序分配的, 接口不同 id 就对不上.
+     */
+    private static final class SelectiveCallbackFilter implements CallbackFilter {
+
+        private final AdvisedSupport advised;
+
+        SelectiveCallbackFilter(AdvisedSupport advised) {
+            this.advised = advised;
+        }
+
+        @Override
+        public int accept(Method method) {
+            if (AopUtils.isFinalizeMethod(method)) {
+                return NO_OVERRIDE;
+            }
+            if (!this.advised.isOpaque() && method.getDeclaringClass().isInterface() &&
+                    method.getDeclaringClass().isAssignableFrom(Advised.class)) {
+                return DISPATCH_ADVISED;
+            }
+            if (AopUtils.isEqualsMethod(method)) {
+                return INVOKE_EQUALS;
+            }
+            if (AopUtils.isHashCodeMethod(method)) {
+                return INVOKE_HASHCODE;
+            }
+            Class<?> targetClass = this.advised.getTargetClass();
+            if (!this.advised.getInterceptorsAndDynamicInterceptionAdvice(method, targetClass).isEmpty()) {
+                /** 分派表里有的, 用记着 id 的那个 Callback; 没有的(比如 protected 方法) 走通用的. **/
+                int methodId = this.advised.getMethodId(method);
+                return (methodId >= 0 ? FIXED_CHAIN_BASE + methodId : AOP_PROXY);
+            }
+            /** 返回值可能是目标对象自己的, 要有机会换成代理, 不能直接 Dispatcher. **/
+            return (method.getReturnType().isAssignableFrom(targetClass) ? INVOKE_TARGET : DISPATCH_TARGET);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof SelectiveCallbackFilter)) {
+                return false;
+            }
+            AdvisedSupport otherAdvised = ((SelectiveCallbackFilter) other).advised;
+            return (this.advised.isOpaque() == otherAdvised.isOpaque() &&
+                    this.advised.isPreFiltered() == otherAdvised.isPreFiltered() &&
+                    this.advised.getTargetClass() == otherAdvised.getTargetClass() &&
+                    Arrays.equals(this.advised.getProxiedInterfaces(), otherAdvised.getProxiedInterfaces()) &&
+                    Arrays.equals(this.advised.getAdvisors(), otherAdvised.getAdvisors()));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(this.advised.getAdvisors()) + (this.advised.isPreFiltered() ? 1 : 0);
+        }
+    }
+
+
+    /**
+     * 有拦截器的方法: 走 {@link AdvisedSupport#getCompiledChain(Method, Class)},
+     * 每个方法编译一次, 缓存在配置里, 和 compileChain 的其他用法共用.
+     */
+    private static final class ChainInterceptor implements MethodInterceptor {
+
+        private final AdvisedSupport advised;
+
+        private final Object target;
+
+        private final Class<?> targetClass;
+
+        ChainInterceptor(AdvisedSupport advised, Object target) {
+            this.advised = advised;
+            this.target = target;
+            this.targetClass = (target != null ? target.getClass() : advised.getTargetClass());
+        }
+
+        @Override
+        public Object intercept(Object proxy, Method method, Object[] args, MethodProxy methodProxy) throws Throwable {
+            /** isApplicable 保证了 compileChain + frozen, 这里不会是 null. **/
+            CompiledInterceptorChain chain = this.advised.getCompiledChain(method, this.targetClass);
+            Object retVal = chain.invoke(proxy, this.target, args, this.targetClass);
+            return processReturnType(proxy, this.target, method, retVal);
+        }
+    }
+
+
+    /**
+     * 分派表里有拦截器的方法, 每个方法一个, 记着自己的 method id:
+     * 调用时直接 {@link AdvisedSupport#getCompiledChain(int)}, 不用再拿 Method 去查表. 取不到再退回通用的.
+     */
+    private static final class FixedChainInterceptor implements MethodInterceptor {
+
+        private final ChainInterceptor delegate;
+
+        private final int methodId;
+
+        FixedChainInterceptor(ChainInterceptor delegate, int methodId) {
+            this.delegate = delegate;
+            this.methodId = methodId;
+        }
+
+        @Override
+        public Object intercept(Object proxy, Method method, Object[] args, MethodProxy methodProxy) throws Throwable {
+            CompiledInterceptorChain chain = this.delegate.advised.getCompiledChain(this.methodId);
+            if (chain == null) {
+                return this.delegate.intercept(proxy, method, args, methodProxy);
+            }
+            Object retVal = chain.invoke(proxy, this.delegate.target, args, this.delegate.targetClass);
+            return processReturnType(proxy, this.delegate.target, method, retVal);
+        }
+    }
+
+
+    /**
+     * 没有拦截器, 但返回值可能是 this 的方法.
+     * 走 AdvisedSupport 的零拦截器快速通道, 拿不到(比如 MethodHandle 解析不出来) 再用 MethodProxy.
+     */
+    private static final class UnadvisedInterceptor implements MethodInterceptor {
+
+        private final AdvisedSupport advised;
+
+        private final Object target;
+
+        UnadvisedInterceptor(AdvisedSupport advised, Object target) {
+            this.advised = advised;
+            this.target = target;
+        }
+
+        @Override
+        public Object intercept(Object proxy, Method method, Object[] args, MethodProxy methodProxy) throws Throwable {
+            DirectTargetCall call = this.advised.getDirectTargetCall(method, this.target.getClass());
+            Object retVal = (call != null ? call.invoke(args) : methodProxy.invoke(this.target, args));
+            return processReturnType(proxy, this.target, method, retVal);
+        }
+    }
+
+
+    /** 没有拦截器的方法: Cglib 直接在返回的对象上调用. **/
+    private static final class TargetDispatcher implements Dispatcher {
+
+        private final Object target;
+
+        TargetDispatcher(Object target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object loadObject() {
+            return this.target;
+        }
+    }
+
+
+    /** Advised 接口的方法, 分派给配置本身. **/
+    private static final class AdvisedDispatcher implements Dispatcher {
+
+        private final AdvisedSupport advised;
+
+        AdvisedDispatcher(AdvisedSupport advised) {
+            this.advised = advised;
+        }
+
+        @Override
+        public Object loadObject() {
+            return this.advised;
+        }
+    }
+
+
+    /** 两个代理: 目标对象是同一个、Advisor 和接口都一样, 就算相等. **/
+    private static final class EqualsInterceptor implements MethodInterceptor {
+
+        private final AdvisedSupport advised;
+
+        private final Object target;
+
+        EqualsInterceptor(AdvisedSupport advised, Object target) {
+            this.advised = advised;
+            this.target = target;
+        }
+
+        @Override
+        public Object intercept(Object proxy, Method method, Object[] args, MethodProxy methodProxy) {
+            Object other = args[0];
+            if (proxy == other) {
+                return true;
+            }
+            if (other instanceof Factory) {
+                Callback callback = ((Factory) other).getCallback(INVOKE_EQUALS);
+                if (callback instanceof EqualsInterceptor) {
+                    EqualsInterceptor otherInterceptor = (EqualsInterceptor) callback;
+                    return (this.target == otherInterceptor.target &&
+                            Arrays.equals(this.advised.getAdvisors(), otherInterceptor.advised.getAdvisors()) &&
+                            Arrays.equals(this.advised.getProxiedInterfaces(), otherInterceptor.advised.getProxiedInterfaces()));
+                }
+            }
+            return false;
+        }
+    }
+
+
+    private static final class HashCodeInterceptor implements MethodInterceptor {
+
+        private final AdvisedSupport advised;
+
+        HashCodeInterceptor(AdvisedSupport advised) {
+            this.advised = advised;
+        }
+
+        @Override
+        public Object intercept(Object proxy, Method method, Object[] args, MethodProxy methodProxy) {
+            return SelectiveCglibAopProxy.class.hashCode() * 13 + this.advised.getTargetSource().hashCode();
+        }
+    }
+
+}
@@ -9,15 +9,26 @@ package resource.creator;
 import org.springframework.aop.Advisor;
 import org.springframework.aop.TargetSource;
 import org.springframework.aop.aspectj.autoproxy.AspectJAwareAdvisorAutoProxyCreator;
-import org.springframework.aop.framework.autoproxy.AbstractAutoProxyCreator;
-import org.springframework.aop.framework.autoproxy.BeanFactoryAdvisorRetrievalHelper;
 import org.springframework.aop.framework.autoproxy.ProxyCreationContext;
 import org.springframework.aop.support.AopUtils;
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.core.annotation.AnnotationAwareOrderComparator;
+import resource.util.advisor.AdvisorIdentity;
+import resource.util.advisor.AdvisorMatchSnapshot;
+import resource.util.advisor.BeanFactoryAdvisorRetrievalHelper;
+import resource.util.advisor.CandidateAdvisorIndex;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 基于 Advisor 的 代理创建器. 创建器继承图如下: ↓
@@ -35,6 +46,41 @@ public abstract class AbstractAdvisorAutoProxyCreator extends AbstractAutoProxyC
 
     private BeanFactoryAdvisorRetrievalHelper advisorRetrievalHelper;
 
+    /** 是否缓存每个 (beanClass, beanName) 筛选、排序之后的 Advisor 列表, 默认缓存. **/
+    private boolean cacheEligibleAdvisors = true;
+
+    /** 最多缓存多少个 (beanClass, beanName), 满了之后新来的不再缓存. **/
+    private int eligibleAdvisorCacheLimit = 4096;
+
+    /**
+     * 当前这批候选 Advisor 对应的缓存. 候选 Advisor 一变, 整个换掉.
+     * @see #findEligibleAdvisors(Class, String)
+     */
+    private volatile EligibleAdvisorCache eligibleAdvisorCache;
+
+    /** 是否先用 {@link CandidateAdvisorIndex} 按类粗筛一遍, 默认开启. **/
+    private boolean useCandidateAdvisorIndex = true;
+
+    /** 当前这批候选 Advisor 的索引, 候选 Advisor 一变就重建. **/
+    private volatile CandidateAdvisorIndex candidateAdvisorIndex;
+
+    /** 持久化的匹配快照文件, 不设置就不用. **/
+    private File matchSnapshotFile;
+
+    /** 上次启动留下的快照, 第一次用到时才打开. **/
+    private volatile AdvisorMatchSnapshot matchSnapshot;
+
+    private volatile boolean matchSnapshotLoaded = false;
+
+    /** 这次启动的匹配结果(包括回放的), 容器刷新完成时写回快照文件. **/
+    private final Map<String, AdvisorMatchSnapshot.Record> matchRecords = new ConcurrentHashMap<>(256);
+
+    /** matchRecords 对应的候选 Advisor 指纹. **/
+    private volatile long matchRecordsFingerprint;
+
+    /** 这次启动有没有回放不了、重新算过的. 全都是回放的就不用再写文件了. **/
+    private volatile boolean matchSnapshotDirty = false;
+
 
     /**
      * 重写了setBeanFactory方法, 保证bean工厂必须是ConfigurableListableBeanFactory.
@@ -70,6 +116,58 @@ public abstract class AbstractAdvisorAutoProxyCreator extends AbstractAutoProxyC
         return advisors.isEmpty() ? DO_NOT_PROXY : advisors.toArray();
     }
 
+    /**
+     * 原型 Bean 每 getBean 一次都会走一遍 wrapIfNecessary, 不缓存的话每次都要把全部 Advisor 的切点再匹配一遍.
+     * 缓存的 key 是 (beanClass, beanName): 切点匹配除了看类, 还可能通过 bean() 表达式看 beanName.
+     * 只要候选 Advisor 没变, 缓存就一直有效. 非单例的切面每次都会生成新的 Advisor 实例, 这种也算没变,
+     * 缓存里记的是候选 Advisor 的下标, 命中时到这次的候选 Advisor 里取. 见 {@link AdvisorIdentity}.
+     */
+    public void setCacheEligibleAdvisors(boolean cacheEligibleAdvisors) {
+        this.cacheEligibleAdvisors = cacheEligibleAdvisors;
+        this.eligibleAdvisorCache = null;
+    }
+
+    public boolean isCacheEligibleAdvisors() {
+        return this.cacheEligibleAdvisors;
+    }
+
+    /**
+     * 最多缓存多少个 (beanClass, beanName), 默认 4096. 内部 Bean 的名字是生成的, 每个都不一样,
+     * 不设上限的话缓存会一直涨. 满了之后新的 Bean 照常匹配, 只是不再放进缓存.
+     */
+    public void setEligibleAdvisorCacheLimit(int eligibleAdvisorCacheLimit) {
+        this.eligibleAdvisorCacheLimit = eligibleAdvisorCacheLimit;
+    }
+
+    /**
+     * 精确匹配之前, 先用包前缀、注解类型建的索引把明显不相干的 Advisor 去掉.
+     * 索引只会多给不会少给, 结果和不用索引时一样.
+     * @see CandidateAdvisorIndex
+     */
+    public void setUseCandidateAdvisorIndex(boolean useCandidateAdvisorIndex) {
+        this.useCandidateAdvisorIndex = useCandidateAdvisorIndex;
+        this.candidateAdvisorIndex = null;
+    }
+
+    public boolean isUseCandidateAdvisorIndex() {
+        return this.useCandidateAdvisorIndex;
+    }
+
+    /**
+     * 持久化 "哪些 Advisor 作用在哪个 Bean 上": 容器刷新完成时写到这个文件里, 下次启动时回放, 跳过切点匹配.
+     * Bean 的类字节码变了、候选 Advisor 的定义变了, 对应的记录就不会被回放, 照常匹配.
+     * @see AdvisorMatchSnapshot
+     */
+    public void setMatchSnapshotFile(File matchSnapshotFile) {
+        this.matchSnapshotFile = matchSnapshotFile;
+        AdvisorMatchSnapshot snapshot = this.matchSnapshot;
+        this.matchSnapshot = null;
+        this.matchSnapshotLoaded = false;
+        if (snapshot != null) {
+            snapshot.close();
+        }
+    }
+
     /**
      * 找到有资格的. 流程分两步走: ↓
      * <ul>
@@ -79,9 +177,36 @@ public abstract class AbstractAdvisorAutoProxyCreator extends AbstractAutoProxyC
      * </ul>
      */
     protected List<Advisor> findEligibleAdvisors(Class<?> beanClass, String beanName) {
-        /** 找出所有 Advisors. **/
+        /** 找出所有 Advisors. 缓存命中时要按下标取, 先保证能随机访问. **/
         List<Advisor> candidateAdvisors = findCandidateAdvisors();
+        if (!(candidateAdvisors instanceof RandomAccess)) {
+            candidateAdvisors = new ArrayList<>(candidateAdvisors);
+        }
+        EligibleAdvisorCache cache = this.eligibleAdvisorCache;
+        if (cache == null || !cache.isFor(candidateAdvisors)) {
+            cache = new EligibleAdvisorCache(candidateAdvisors);
+            this.eligibleAdvisorCache = cache;
+            candidateAdvisorsChanged(candidateAdvisors);
+        }
+        if (!this.cacheEligibleAdvisors) {
+            return doFindEligibleAdvisors(candidateAdvisors, beanClass, beanName);
+        }
 
+        EligibleAdvisorsKey key = new EligibleAdvisorsKey(beanClass, beanName);
+        EligibleAdvisors cached = cache.eligibleAdvisors.get(key);
+        if (cached == null) {
+            List<Advisor> eligibleAdvisors = doFindEligibleAdvisors(candidateAdvisors, beanClass, beanName);
+            if (cache.eligibleAdvisors.size() < this.eligibleAdvisorCacheLimit) {
+                cache.eligibleAdvisors.put(key, cache.remember(eligibleAdvisors, candidateAdvisors));
+            }
+            return eligibleAdvisors;
+        }
+        /** 每次都是新的 List, 调用方改了也没关系. **/
+        return cached.resolve(candidateAdvisors);
+    }
+
+    /** 真正的筛选 + 拓展 + 排序. **/
+    protected List<Advisor> doFindEligibleAdvisors(List<Advisor> candidateAdvisors, Class<?> beanClass, String beanName) {
         /**
          * 对找到的 Advisors进行过滤操作, 看看 Advisor 能否被用在 Bean上(根据Advisor的PointCut判断).
          * 主要依赖于 {@link AopUtils#findAdvisorsThatCanApply(List, Class)} 方法. 逻辑简单概述为: ↓
@@ -103,14 +228,147 @@ public abstract class AbstractAdvisorAutoProxyCreator extends AbstractAutoProxyC
         return eligibleAdvisors;
     }
 
+    /**
+     * 子类拓展: 候选 Advisor 变了(包括第一次拿到), 之前缓存的筛选结果都已经作废.
+     * 依赖候选 Advisor 的其他缓存可以在这里一起重建.
+     */
+    protected void candidateAdvisorsChanged(List<Advisor> candidateAdvisors) {
+    }
+
     protected List<Advisor> findCandidateAdvisors() {
         return this.advisorRetrievalHelper.findAdvisorBeans();
     }
 
+    /**
+     * 容器里 Advisor Bean 的缓存结果, 只用来按引用判断有没有重新解析过.
+     * @see BeanFactoryAdvisorRetrievalHelper#getCachedAdvisors()
+     */
+    protected final List<Advisor> getCachedAdvisorBeans() {
+        return (this.advisorRetrievalHelper != null ? this.advisorRetrievalHelper.getCachedAdvisors() : null);
+    }
+
     protected List<Advisor> findAdvisorsThatCanApply(List<Advisor> candidateAdvisors, Class<?> beanClass, String beanName) {
+        if (this.matchSnapshotFile != null && beanName != null) {
+            EligibleAdvisorCache cache = this.eligibleAdvisorCache;
+            if (cache != null && cache.isFor(candidateAdvisors)) {
+                return findAdvisorsThatCanApplyWithSnapshot(cache, candidateAdvisors, beanClass, beanName);
+            }
+        }
+        return doFindAdvisorsThatCanApply(candidateAdvisors, beanClass, beanName);
+    }
+
+    /**
+     * 先看快照里有没有这个 Bean 的记录, 有而且类和候选 Advisor 都没变就直接回放.
+     * 否则照常匹配, 把结果记下来. 候选 Advisor 有指纹盖不住的, 既不回放也不记录.
+     */
+    private List<Advisor> findAdvisorsThatCanApplyWithSnapshot(EligibleAdvisorCache cache, List<Advisor> candidateAdvisors,
+                                                               Class<?> beanClass, String beanName) {
+        long fingerprint = cache.getFingerprint();
+        if (fingerprint == AdvisorMatchSnapshot.UNFINGERPRINTABLE) {
+            return doFindAdvisorsThatCanApply(candidateAdvisors, beanClass, beanName);
+        }
+        long classHash = AdvisorMatchSnapshot.hashClass(beanClass);
+        if (classHash == AdvisorMatchSnapshot.UNHASHABLE) {
+            return doFindAdvisorsThatCanApply(candidateAdvisors, beanClass, beanName);
+        }
+        if (this.matchRecordsFingerprint != fingerprint) {
+            synchronized (this.matchRecords) {
+                if (this.matchRecordsFingerprint != fingerprint) {
+                    this.matchRecords.clear();
+                    this.matchRecordsFingerprint = fingerprint;
+                }
+            }
+        }
+        String recordKey = beanName + '\0' + beanClass.getName();
+
+        AdvisorMatchSnapshot snapshot = getMatchSnapshot();
+        if (snapshot != null && snapshot.getAdvisorFingerprint() == fingerprint) {
+            int[] indices = snapshot.lookup(beanName, beanClass, classHash);
+            List<Advisor> replayed = (indices != null ? cache.select(indices, candidateAdvisors) : null);
+            if (replayed != null) {
+                this.matchRecords.put(recordKey, new AdvisorMatchSnapshot.Record(beanName, beanClass, classHash, indices));
+                return replayed;
+            }
+        }
+
+        List<Advisor> eligibleAdvisors = doFindAdvisorsThatCanApply(candidateAdvisors, beanClass, beanName);
+        int[] indices = cache.indicesOf(eligibleAdvisors, candidateAdvisors);
+        if (indexOfMissing(indices) < 0) {
+            this.matchRecords.put(recordKey, new AdvisorMatchSnapshot.Record(beanName, beanClass, classHash, indices));
+            this.matchSnapshotDirty = true;
+        }
+        return eligibleAdvisors;
+    }
+
+    private AdvisorMatchSnapshot getMatchSnapshot() {
+        if (!this.matchSnapshotLoaded) {
+            synchronized (this.matchRecords) {
+                if (!this.matchSnapshotLoaded) {
+                    this.matchSnapshot = AdvisorMatchSnapshot.open(this.matchSnapshotFile);
+                    this.matchSnapshotLoaded = true;
+                    if (this.matchSnapshot != null && logger.isDebugEnabled()) {
+                        logger.debug("Opened advisor match snapshot [" + this.matchSnapshotFile + "] with " +
+                                this.matchSnapshot.size() + " entries");
+                    }
+                }
+            }
+        }
+        return this.matchSnapshot;
+    }
+
+    /**
+     * 容器刷新完成: 上次的快照用完了, 先关掉(解除映射, 文件才换得掉); 有重新算过的就把这次的结果写回快照文件.
+     * 之后再创建的 Bean 照常匹配, 不再打开快照.
+     */
+    @Override
+    protected void contextRefreshed(ContextRefreshedEvent event) {
+        super.contextRefreshed(event);
+        if (this.matchSnapshotFile == null) {
+            return;
+        }
+        List<AdvisorMatchSnapshot.Record> records;
+        long fingerprint;
+        synchronized (this.matchRecords) {
+            AdvisorMatchSnapshot snapshot = this.matchSnapshot;
+            this.matchSnapshot = null;
+            this.matchSnapshotLoaded = true;
+            if (snapshot != null) {
+                snapshot.close();
+            }
+            if (!this.matchSnapshotDirty) {
+                return;
+            }
+            /** 在锁里拷一份: 写文件要遍历两遍(先算大小再写), 遍历的时候不能有别的线程往里放. **/
+            records = new ArrayList<AdvisorMatchSnapshot.Record>(this.matchRecords.values());
+            fingerprint = this.matchRecordsFingerprint;
+            this.matchSnapshotDirty = false;
+        }
+        try {
+            AdvisorMatchSnapshot.write(this.matchSnapshotFile, fingerprint, records);
+            if (logger.isInfoEnabled()) {
+                logger.info("Wrote advisor match snapshot [" + this.matchSnapshotFile + "] with " +
+                        records.size() + " entries");
+            }
+        }
+        catch (IOException ex) {
+            logger.warn("Failed to write advisor match snapshot [" + this.matchSnapshotFile + "]", ex);
+        }
+    }
+
+    /** 真正的匹配: 索引粗筛 + AopUtils 精确匹配. **/
+    private List<Advisor> doFindAdvisorsThatCanApply(List<Advisor> candidateAdvisors, Class<?> beanClass, String beanName) {
+        List<Advisor> advisorsToMatch = candidateAdvisors;
+        if (this.useCandidateAdvisorIndex && !candidateAdvisors.isEmpty()) {
+            CandidateAdvisorIndex index = this.candidateAdvisorIndex;
+            if (index == null || !index.isFor(candidateAdvisors)) {
+                index = CandidateAdvisorIndex.build(candidateAdvisors);
+                this.candidateAdvisorIndex = index;
+            }
+            advisorsToMatch = index.getCandidates(beanClass, candidateAdvisors);
+        }
         ProxyCreationContext.setCurrentProxiedBeanName(beanName);
         try {
-            return AopUtils.findAdvisorsThatCanApply(candidateAdvisors, beanClass);
+            return AopUtils.findAdvisorsThatCanApply(advisorsToMatch, beanClass);
         }
         finally {
             ProxyCreationContext.setCurrentProxiedBeanName(null);
@@ -137,6 +395,174 @@ public abstract class AbstractAdvisorAutoProxyCreator extends AbstractAutoProxyC
 
 
 
+    /** 第一个 -1(不是候选 Advisor) 的位置, 没有返回 -1. **/
+    private static int indexOfMissing(int[] indices) {
+        for (int i = 0; i < indices.length; i++) {
+            if (indices[i] < 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * 一批候选 Advisor 对应的筛选结果, 以及快照要用的指纹、下标.
+     * 候选 Advisor 变了就整个换新的, 旧的里面不管还有没有线程在往里放, 都不会再被读到.
+     * 是不是 "变了" 按 {@link AdvisorIdentity} 判断, 所以这里的 Advisor 实例只用来比较, 结果一律按下标到当前的候选 Advisor 里取.
+     */
+    private static final class EligibleAdvisorCache {
+
+        /** 候选 Advisor 的快照, 按 {@link AdvisorIdentity#isSameCandidates} 比较. **/
+        private final Advisor[] candidateAdvisors;
+
+        private final Map<EligibleAdvisorsKey, EligibleAdvisors> eligibleAdvisors = new ConcurrentHashMap<>(256);
+
+        /** 候选 Advisor 的指纹, 用到时才算. **/
+        private volatile Long fingerprint;
+
+        /** Advisor -> 在候选 Advisor 里的下标, 用到时才建. **/
+        private volatile Map<Advisor, Integer> positions;
+
+        EligibleAdvisorCache(List<Advisor> candidateAdvisors) {
+            this.candidateAdvisors = candidateAdvisors.toArray(new Advisor[candidateAdvisors.size()]);
+        }
+
+        long getFingerprint() {
+            Long fingerprint = this.fingerprint;
+            if (fingerprint == null) {
+                fingerprint = AdvisorMatchSnapshot.fingerprint(Arrays.asList(this.candidateAdvisors));
+                this.fingerprint = fingerprint;
+            }
+            return fingerprint;
+        }
+
+        /** 下标 -> 当前的候选 Advisor, 下标越界(快照和当前对不上) 返回 null. **/
+        List<Advisor> select(int[] indices, List<Advisor> candidateAdvisors) {
+            List<Advisor> selected = new ArrayList<>(indices.length);
+            for (int index : indices) {
+                if (index < 0 || index >= candidateAdvisors.size()) {
+                    return null;
+                }
+                selected.add(candidateAdvisors.get(index));
+            }
+            return selected;
+        }
+
+        /**
+         * Advisor -> 在当前的候选 Advisor 里的下标, 不在里面的(子类自己加的) 是 -1.
+         * 先查建缓存时那批实例的下标; 查不到的可能是非单例切面新解析出来的, 再到当前这批里找.
+         */
+        int[] indicesOf(List<Advisor> advisors, List<Advisor> candidateAdvisors) {
+            Map<Advisor, Integer> positions = this.positions;
+            if (positions == null) {
+                positions = positionsOf(Arrays.asList(this.candidateAdvisors));
+                this.positions = positions;
+            }
+            Map<Advisor, Integer> currentPositions = null;
+            int[] indices = new int[advisors.size()];
+            for (int i = 0; i < indices.length; i++) {
+                Advisor advisor = advisors.get(i);
+                Integer position = positions.get(advisor);
+                if (position == null) {
+                    if (currentPositions == null) {
+                        currentPositions = positionsOf(candidateAdvisors);
+                    }
+                    position = currentPositions.get(advisor);
+                }
+                indices[i] = (position != null ? position : -1);
+            }
+            return indices;
+        }
+
+        /** 把筛选结果换成下标记下来. **/
+        EligibleAdvisors remember(List<Advisor> eligibleAdvisors, List<Advisor> candidateAdvisors) {
+            int[] indices = indicesOf(eligibleAdvisors, candidateAdvisors);
+            Advisor[] extraAdvisors = null;
+            for (int i = 0; i < indices.length; i++) {
+                if (indices[i] < 0) {
+                    if (extraAdvisors == null) {
+                        extraAdvisors = new Advisor[indices.length];
+                    }
+                    extraAdvisors[i] = eligibleAdvisors.get(i);
+                }
+            }
+            return new EligibleAdvisors(indices, extraAdvisors);
+        }
+
+        private static Map<Advisor, Integer> positionsOf(List<Advisor> candidateAdvisors) {
+            Map<Advisor, Integer> positions = new IdentityHashMap<>(candidateAdvisors.size() * 2);
+            int i = 0;
+            for (Advisor advisor : candidateAdvisors) {
+                positions.put(advisor, i++);
+            }
+            return positions;
+        }
+
+        /** 同一批候选 Advisor 才算没变, 见 {@link AdvisorIdentity#isSameCandidates}. **/
+        boolean isFor(List<Advisor> candidateAdvisors) {
+            return AdvisorIdentity.isSameCandidates(this.candidateAdvisors, candidateAdvisors);
+        }
+    }
+
+
+    /**
+     * 一个 Bean 筛选、排序之后的结果: 每个位置是候选 Advisor 的下标;
+     * -1 的是 extendAdvisors 加进来的(比如 ExposeInvocationInterceptor.ADVISOR), 实例记在 extraAdvisors 的同一个位置.
+     */
+    private static final class EligibleAdvisors {
+
+        private final int[] indices;
+
+        private final Advisor[] extraAdvisors;
+
+        EligibleAdvisors(int[] indices, Advisor[] extraAdvisors) {
+            this.indices = indices;
+            this.extraAdvisors = extraAdvisors;
+        }
+
+        List<Advisor> resolve(List<Advisor> candidateAdvisors) {
+            List<Advisor> advisors = new ArrayList<>(this.indices.length);
+            for (int i = 0; i < this.indices.length; i++) {
+                int index = this.indices[i];
+                advisors.add(index >= 0 ? candidateAdvisors.get(index) : this.extraAdvisors[i]);
+            }
+            return advisors;
+        }
+    }
+
+
+    private static final class EligibleAdvisorsKey {
+
+        private final Class<?> beanClass;
+
+        private final String beanName;
+
+        EligibleAdvisorsKey(Class<?> beanClass, String beanName) {
+            this.beanClass = beanClass;
+            this.beanName = beanName;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof EligibleAdvisorsKey)) {
+                return false;
+            }
+            EligibleAdvisorsKey otherKey = (EligibleAdvisorsKey) other;
+            return (this.beanClass == otherKey.beanClass &&
+                    (this.beanName != null ? this.beanName.equals(otherKey.beanName) : otherKey.beanName == null));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.beanClass.hashCode() + (this.beanName != null ? this.beanName.hashCode() : 0);
+        }
+    }
+
+
     private class BeanFactoryAdvisorRetrievalHelperAdapter extends BeanFactoryAdvisorRetrievalHelper {
 
         public BeanFactoryAdvisorRetrievalHelperAdapter(ConfigurableListableBeanFactory beanFactory) {
@@ -10,7 +10,9 @@ import org.aopalliance.aop.Advice;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.aop.Advisor;
+import org.springframework.aop.MethodMatcher;
 import org.springframework.aop.Pointcut;
+import org.springframework.aop.PointcutAdvisor;
 import org.springframework.aop.TargetSource;
 import org.springframework.aop.aspectj.*;
 import org.springframework.aop.aspectj.AspectJExpressionPointcut;
@@ -32,13 +34,28 @@ import org.springframework.beans.factory.FactoryBean;
 import org.springframework.beans.factory.config.ConfigurableBeanFactory;
 import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.beans.factory.config.SmartInstantiationAwareBeanPostProcessor;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.util.StringUtils;
+import resource.advised.AdvisedSupport;
+import resource.advised.util.DefaultAdvisorChainFactory;
+import resource.aopproxyfactory.aopproxyfactory.SelectiveCglibAopProxy;
 import resource.config.ProxyConfig;
 
 import java.beans.PropertyDescriptor;
 import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 自动代理创建器: 声明式 Aop 编程中非常重要的一个角色. 主要是规定了代理创建的流程.
@@ -101,7 +118,7 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 @SuppressWarnings("all")
 public abstract class AbstractAutoProxyCreator extends ProxyProcessorSupport
-        implements SmartInstantiationAwareBeanPostProcessor, BeanFactoryAware {
+        implements SmartInstantiationAwareBeanPostProcessor, BeanFactoryAware, ApplicationListener<ContextRefreshedEvent> {
 
     /**
      * Convenience constant for subclasses: Return value for "do not proxy".
@@ -162,6 +179,42 @@ public abstract class AbstractAutoProxyCreator extends ProxyProcessorSupport
     /** 经过了 Aop流程 的  Bean, Value: 是否为其创建了代理. **/
     private final Map<Object, Boolean> advisedBeans = new ConcurrentHashMap<Object, Boolean>(256);
 
+    /**
+     * 拦截器链预热方式, 默认不预热.
+     * @see #warmUpChains(ProxyFactory, String)
+     */
+    private ChainWarmUp chainWarmUp = ChainWarmUp.NONE;
+
+    /** 后台预热用的线程池, 不指定的话第一次用到时建一个默认的. **/
+    private volatile Executor warmUpExecutor;
+
+    /** 容器刷新完成之前创建的代理, 等刷新完了再交给后台预热. **/
+    private final Queue<ProxyFactory> pendingWarmUps = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean refreshed = false;
+
+    /** 预热总耗时(纳秒) 和 预热过的代理数、方法数. **/
+    private final AtomicLong warmUpNanos = new AtomicLong();
+
+    private final AtomicInteger warmedUpProxyCount = new AtomicInteger();
+
+    private final AtomicInteger warmedUpMethodCount = new AtomicInteger();
+
+    /**
+     * 基于类的代理是否改用 {@link SelectiveCglibAopProxy}: 只重写有拦截器的方法, 默认 false.
+     * @see #setSelectiveProxy(boolean)
+     */
+    private boolean selectiveProxy = false;
+
+    /** selectiveProxy 的代理调用目标方法时是否用 MethodHandle, 默认 false. **/
+    private boolean methodHandleInvocation = false;
+
+    /** selectiveProxy 的代理是否按线程复用 MethodInvocation, 默认 false. **/
+    private boolean reuseInvocation = false;
+
+    /** selectiveProxy 的代理建链用的, 共用一个, 这样 SharedChainCache 里的链也能共用. **/
+    private final DefaultAdvisorChainFactory selectiveChainFactory = new DefaultAdvisorChainFactory();
+
     @Override
     public void setFrozen(boolean frozen) {
         this.freezeProxy = frozen;
@@ -199,6 +252,76 @@ public abstract class AbstractAutoProxyCreator extends ProxyProcessorSupport
         this.applyCommonInterceptorsFirst = applyCommonInterceptorsFirst;
     }
 
+    /**
+     * 拦截器链预热: 每个方法第一次被调用时才去算链, 其中最贵的是 AspectJ 切点的 shadow match,
+     * 刚发布完那一波请求会因此出现毛刺. 打开预热之后, 提前把切点匹配做一遍: ↓
+     *     EAGER: createProxy 时同步把代理的接口/目标类的 public 方法都匹配一遍.
+     *     BACKGROUND: 容器刷新完成之后, 在有界的后台线程池里算.
+     */
+    public void setChainWarmUp(ChainWarmUp chainWarmUp) {
+        this.chainWarmUp = (chainWarmUp != null ? chainWarmUp : ChainWarmUp.NONE);
+    }
+
+    public ChainWarmUp getChainWarmUp() {
+        return this.chainWarmUp;
+    }
+
+    /**
+     * 指定后台预热用的线程池. 不指定就用默认的: 单个守护线程, 队列满了由提交的线程自己预热.
+     * 自己指定的线程池拒绝了任务的话, 这个代理就不预热了(打 debug 日志), 大不了第一次调用时再算.
+     */
+    public void setWarmUpExecutor(Executor warmUpExecutor) {
+        this.warmUpExecutor = warmUpExecutor;
+    }
+
+    /** 到目前为止预热总共花了多少纳秒. **/
+    public long getTotalWarmUpNanos() {
+        return this.warmUpNanos.get();
+    }
+
+    public int getWarmedUpProxyCount() {
+        return this.warmedUpProxyCount.get();
+    }
+
+    /**
+     * 基于类的代理改用 {@link SelectiveCglibAopProxy}: 只重写有拦截器的方法, 其余方法直接分派给目标对象,
+     * 有拦截器的方法走编译过的链(compileChain). 用不了的 Bean(JDK 代理、TargetSource 不是静态的、exposeProxy)
+     * 还是走 ProxyFactory, 见 {@link SelectiveCglibAopProxy#isApplicable}.
+     * 注意: 这种代理的配置一律冻结, 之后再通过 Advised 接口改 Advisor 会抛 AopConfigException.
+     * 也不参与 chainWarmUp: 创建代理时已经把每个方法的链都算好了.
+     */
+    public void setSelectiveProxy(boolean selectiveProxy) {
+        this.selectiveProxy = selectiveProxy;
+    }
+
+    public boolean isSelectiveProxy() {
+        return this.selectiveProxy;
+    }
+
+    /**
+     * 只对 selectiveProxy 的代理有效.
+     * @see resource.advised.AdvisedSupport#setMethodHandleInvocation(boolean)
+     */
+    public void setMethodHandleInvocation(boolean methodHandleInvocation) {
+        this.methodHandleInvocation = methodHandleInvocation;
+    }
+
+    /**
+     * 只对 selectiveProxy 的代理有效.
+     * @see resource.advised.AdvisedSupport#setReuseInvocation(boolean)
+     */
+    public void setReuseInvocation(boolean reuseInvocation) {
+        this.reuseInvocation = reuseInvocation;
+    }
+
+    /**
+     * 只对 selectiveProxy 的代理有效.
+     * @see DefaultAdvisorChainFactory#setFuseAdvice(boolean)
+     */
+    public void setFuseAdvice(boolean fuseAdvice) {
+        this.selectiveChainFactory.setFuseAdvice(fuseAdvice);
+    }
+
     @Override
     public void setBeanFactory(BeanFactory beanFactory) { this.beanFactory = beanFactory; }
 
@@ -435,7 +558,213 @@ public abstract class AbstractAutoProxyCreator extends ProxyProcessorSupport
             proxyFactory.setPreFiltered(true);
         }
 
-        return proxyFactory.getProxy(getProxyClassLoader());
+        if (this.selectiveProxy) {
+            Object proxy = createSelectiveProxy(proxyFactory);
+            if (proxy != null) {
+                return proxy;
+            }
+        }
+        if (this.chainWarmUp == ChainWarmUp.EAGER) {
+            warmUpChains(proxyFactory, beanName);
+        }
+        Object proxy = proxyFactory.getProxy(getProxyClassLoader());
+        if (this.chainWarmUp == ChainWarmUp.BACKGROUND) {
+            scheduleWarmUp(proxyFactory);
+        }
+        return proxy;
+    }
+
+    /**
+     * 把 proxyFactory 配好的东西(ProxyConfig 的开关、接口、Advisor、TargetSource、preFiltered) 搬到一份
+     * {@link AdvisedSupport} 上, 打开 selectiveProxy + compileChain 并冻结, 交给 {@link SelectiveCglibAopProxy}.
+     * @return 用不了这种代理时返回 null, 调用方还是走 proxyFactory
+     */
+    private Object createSelectiveProxy(ProxyFactory proxyFactory) {
+        if (proxyFactory.isExposeProxy() || !proxyFactory.getTargetSource().isStatic()) {
+            return null;
+        }
+        AdvisedSupport config = new AdvisedSupport();
+        config.copyFrom(proxyFactory);
+        config.setFrozen(false);
+        config.setTargetSource(proxyFactory.getTargetSource());
+        config.setInterfaces(proxyFactory.getProxiedInterfaces());
+        config.addAdvisors(proxyFactory.getAdvisors());
+        config.setPreFiltered(proxyFactory.isPreFiltered());
+        config.setAdvisorChainFactory(this.selectiveChainFactory);
+        config.setSelectiveProxy(true);
+        config.setCompileChain(true);
+        config.setMethodHandleInvocation(this.methodHandleInvocation);
+        config.setReuseInvocation(this.reuseInvocation);
+        config.setFrozen(true);
+        if (!SelectiveCglibAopProxy.isApplicable(config)) {
+            return null;
+        }
+        return new SelectiveCglibAopProxy(config).getProxy(getProxyClassLoader());
+    }
+
+    /**
+     * 预热一个代理的切点匹配, 并记下耗时: 代理的接口方法 + 目标类的 public 方法, 每个都拿每个 Advisor 的切点匹配一遍.
+     * 不调 ProxyFactory 算链: Spring 的 methodCache 是按 Method 引用比较的, 这里拿到的 Method 和代理调用时传进来的
+     * 不是同一个实例, 放进去的链永远命中不了, 只会白占内存. 切点自己的缓存(AspectJ 的 shadow match) 是按 Method 的
+     * equals 查的, 预热了第一次调用时就能用上, 算链只剩下查缓存和适配.
+     * 预热失败不影响代理的创建, 大不了第一次调用时再算.
+     */
+    protected void warmUpChains(ProxyFactory proxyFactory, String beanName) {
+        long start = System.nanoTime();
+        try {
+            /** 目标类型都不知道的, 切点没法匹配, 不预热. **/
+            Class<?> targetClass = proxyFactory.getTargetClass();
+            if (targetClass == null) {
+                return;
+            }
+            Set<Method> methods = new LinkedHashSet<Method>();
+            for (Class<?> intf : proxyFactory.getProxiedInterfaces()) {
+                methods.addAll(Arrays.asList(intf.getMethods()));
+            }
+            methods.addAll(Arrays.asList(targetClass.getMethods()));
+            for (Advisor advisor : proxyFactory.getAdvisors()) {
+                if (!(advisor instanceof PointcutAdvisor)) {
+                    continue;
+                }
+                Pointcut pointcut = ((PointcutAdvisor) advisor).getPointcut();
+                if (!proxyFactory.isPreFiltered() && !pointcut.getClassFilter().matches(targetClass)) {
+                    continue;
+                }
+                MethodMatcher methodMatcher = pointcut.getMethodMatcher();
+                for (Method method : methods) {
+                    methodMatcher.matches(method, targetClass);
+                }
+            }
+            this.warmedUpMethodCount.addAndGet(methods.size());
+            this.warmedUpProxyCount.incrementAndGet();
+        }
+        catch (RuntimeException ex) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Failed to warm up interceptor chains for bean '" + beanName + "'", ex);
+            }
+        }
+        finally {
+            this.warmUpNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /** 刷新完成之前先攒着, 刷新之后直接提交给后台线程池. **/
+    private void scheduleWarmUp(ProxyFactory proxyFactory) {
+        if (this.refreshed) {
+            submitWarmUp(proxyFactory);
+        }
+        else {
+            this.pendingWarmUps.add(proxyFactory);
+        }
+    }
+
+    private void submitWarmUp(ProxyFactory proxyFactory) {
+        submitWarmUp(proxyFactory, null);
+    }
+
+    /**
+     * 交给后台线程池预热. 线程池拒绝了的话不预热, 但 remaining 照样减一, 不然总耗时永远打不出来.
+     * @param remaining 刷新时那一批还没预热完的个数, 减到 0 时打印总耗时; 刷新之后单个提交的传 null
+     */
+    private void submitWarmUp(final ProxyFactory proxyFactory, final AtomicInteger remaining) {
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    warmUpChains(proxyFactory, null);
+                }
+                finally {
+                    warmUpTaskDone(remaining);
+                }
+            }
+        };
+        try {
+            getWarmUpExecutor().execute(task);
+        }
+        catch (RejectedExecutionException ex) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Interceptor chain warm-up rejected by executor, chains will be computed on first call", ex);
+            }
+            warmUpTaskDone(remaining);
+        }
+    }
+
+    private void warmUpTaskDone(AtomicInteger remaining) {
+        if (remaining != null && remaining.decrementAndGet() == 0) {
+            logWarmUpTotal();
+        }
+    }
+
+    private void logWarmUpTotal() {
+        if (logger.isInfoEnabled()) {
+            logger.info("Interceptor chain warm-up (" + this.chainWarmUp + ") finished: " +
+                    this.warmedUpProxyCount.get() + " proxies, " + this.warmedUpMethodCount.get() + " methods, " +
+                    TimeUnit.NANOSECONDS.toMillis(this.warmUpNanos.get()) + " ms");
+        }
+    }
+
+    private Executor getWarmUpExecutor() {
+        Executor executor = this.warmUpExecutor;
+        if (executor == null) {
+            synchronized (this.pendingWarmUps) {
+                executor = this.warmUpExecutor;
+                if (executor == null) {
+                    ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                            new ArrayBlockingQueue<Runnable>(1024), new ThreadFactory() {
+                                @Override
+                                public Thread newThread(Runnable runnable) {
+                                    Thread thread = new Thread(runnable, "aop-chain-warm-up");
+                                    thread.setDaemon(true);
+                                    return thread;
+                                }
+                            }, new ThreadPoolExecutor.CallerRunsPolicy());
+                    pool.allowCoreThreadTimeOut(true);
+                    this.warmUpExecutor = executor = pool;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * 容器刷新完成: 把攒着的代理交给后台预热.
+     * 预热的总耗时在最后一个预热任务结束时打印; 没有要后台预热的(EAGER, 或者一个代理都没有), 现在就打印.
+     * 子容器刷新的事件也会传到父容器的监听器上, 只认自己所在容器的; 同一个容器也只处理第一次.
+     */
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        if (this.refreshed || !isOwnContext(event)) {
+            return;
+        }
+        this.refreshed = true;
+        List<ProxyFactory> batch = new ArrayList<ProxyFactory>();
+        ProxyFactory proxyFactory;
+        while ((proxyFactory = this.pendingWarmUps.poll()) != null) {
+            batch.add(proxyFactory);
+        }
+        if (!batch.isEmpty()) {
+            AtomicInteger remaining = new AtomicInteger(batch.size());
+            for (ProxyFactory pending : batch) {
+                submitWarmUp(pending, remaining);
+            }
+        }
+        else if (this.chainWarmUp != ChainWarmUp.NONE) {
+            logWarmUpTotal();
+        }
+        contextRefreshed(event);
+    }
+
+    private boolean isOwnContext(ContextRefreshedEvent event) {
+        try {
+            return (event.getApplicationContext().getAutowireCapableBeanFactory() == this.beanFactory);
+        }
+        catch (IllegalStateException ex) {
+            return false;
+        }
+    }
+
+    /** 子类拓展: 容器刷新完成时的回调, 只会调一次. **/
+    protected void contextRefreshed(ContextRefreshedEvent event) {
     }
 
     /**
@@ -514,4 +843,21 @@ public abstract class AbstractAutoProxyCreator extends ProxyProcessorSupport
     protected abstract Object[] getAdvicesAndAdvisorsForBean(
             Class<?> beanClass, String beanName, TargetSource customTargetSource) throws BeansException;
 
+
+    /**
+     * 拦截器链的预热方式.
+     * @see #setChainWarmUp(ChainWarmUp)
+     */
+    public enum ChainWarmUp {
+
+        /** 不预热, 第一次调用时再算. **/
+        NONE,
+
+        /** 创建代理时同步预热. **/
+        EAGER,
+
+        /** 容器刷新完成后在后台线程池里预热. **/
+        BACKGROUND
+    }
+
 }
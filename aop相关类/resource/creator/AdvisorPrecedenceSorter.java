@@ -0,0 +1,291 @@
+package resource.creator;
+
+import org.aspectj.util.PartialOrder;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.aspectj.AspectJAopUtils;
+import org.springframework.aop.aspectj.AspectJPrecedenceInformation;
+import org.springframework.aop.aspectj.autoproxy.AspectJPrecedenceComparator;
+import org.springframework.core.PriorityOrdered;
+import org.springframework.core.annotation.AnnotationAwareOrderComparator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 代替 {@link PartialOrder#sort} + {@link AspectJPrecedenceComparator} 的排序, 结果和它一模一样.
+ * PartialOrder 要把每两个 Advisor 都比一遍(每次比较都要重新拿 order、切面名...), 再反复扫描整个图找 "没有更小的" 节点.
+ *
+ * 拆开 AspectJPrecedenceComparator 看, 它比较两个 Advisor 只看: ↓
+ *     1. 优先级: PriorityOrdered 在前, 然后比 order. 不一样就定了.
+ *     2. 一样的话, 同一个切面里的两个通知再按声明顺序比(有 After 类通知的话反过来), 不同切面的算 "一样".
+ * 所以: ↓
+ *     每个 Advisor 的 (PriorityOrdered, order, 切面名, 声明顺序, 是否 After) 只需要算一次.
+ *     不同优先级之间是全序, 低的一定全排在高的前面, 直接按优先级分组.
+ *     同一优先级内只有同一切面的通知之间有边, 用 Kahn 拓扑排序, 每次取原始下标最小的那个入度为 0 的节点 ——
+ *     PartialOrder 每次取的就是列表里第一个 "没有更小的" 节点, 所以结果一样.
+ *     有环(PartialOrder 会返回 null) 时这里也返回 null, 调用方照旧退回 super.sortAdvisors.
+ *
+ * 另外按 "同一组 Advisor(按引用、按顺序)" 缓存排序结果, 同一个类的 Bean、原型 Bean 不用再排.
+ * @see AspectJAwareAdvisorAutoProxyCreator#sortAdvisors(List)
+ * @author agent on 2026/10/17
+ */
+final class AdvisorPrecedenceSorter {
+
+    /** 缓存最多放这么多组, 满了就整个清掉. **/
+    private static final int MAX_CACHE_SIZE = 1024;
+
+    private static final OrderReader ORDER_READER = new OrderReader();
+
+    private final Map<AdvisorsKey, Advisor[]> sortedCache = new ConcurrentHashMap<>(64);
+
+    /**
+     * 排序.
+     * @return 有环排不出来返回 null
+     */
+    List<Advisor> sort(List<Advisor> advisors) {
+        AdvisorsKey key = new AdvisorsKey(advisors.toArray(new Advisor[advisors.size()]));
+        Advisor[] sorted = this.sortedCache.get(key);
+        if (sorted == null) {
+            sorted = doSort(key.advisors);
+            if (sorted == null) {
+                return null;
+            }
+            if (this.sortedCache.size() >= MAX_CACHE_SIZE) {
+                this.sortedCache.clear();
+            }
+            this.sortedCache.put(key, sorted);
+        }
+        return new ArrayList<>(Arrays.asList(sorted));
+    }
+
+    /** 候选 Advisor 变了, 缓存里的 Advisor 可能都已经不用了, 别拖着它们. **/
+    void clearCache() {
+        this.sortedCache.clear();
+    }
+
+    private static Advisor[] doSort(Advisor[] advisors) {
+        int n = advisors.length;
+        if (n < 2) {
+            return advisors.clone();
+        }
+        PrecedenceKey[] keys = new PrecedenceKey[n];
+        /** 按优先级分组, 组内保持原来的下标顺序. **/
+        TreeMap<PrecedenceKey, List<Integer>> levels = new TreeMap<>();
+        for (int i = 0; i < n; i++) {
+            keys[i] = new PrecedenceKey(advisors[i]);
+            List<Integer> level = levels.get(keys[i]);
+            if (level == null) {
+                level = new ArrayList<>();
+                levels.put(keys[i], level);
+            }
+            level.add(i);
+        }
+
+        Advisor[] sorted = new Advisor[n];
+        int position = 0;
+        for (List<Integer> level : levels.values()) {
+            int[] order = sortLevel(level, keys);
+            if (order == null) {
+                return null;
+            }
+            for (int index : order) {
+                sorted[position++] = advisors[index];
+            }
+        }
+        return sorted;
+    }
+
+    /**
+     * 同一优先级内的拓扑排序.
+     * 边只在同一切面的通知之间: 比较方式和 PartialOrder 一样, 是 "后加入的 compareTo 先加入的".
+     */
+    private static int[] sortLevel(List<Integer> level, PrecedenceKey[] keys) {
+        int size = level.size();
+        if (size == 1) {
+            return new int[] {level.get(0)};
+        }
+        Map<Integer, List<Integer>> successors = new HashMap<>();
+        Map<Integer, Integer> inDegree = new HashMap<>();
+        Map<String, List<Integer>> byAspect = new HashMap<>();
+        for (int index : level) {
+            String aspectName = keys[index].aspectName;
+            if (aspectName == null) {
+                continue;
+            }
+            List<Integer> sameAspect = byAspect.get(aspectName);
+            if (sameAspect == null) {
+                sameAspect = new ArrayList<>();
+                byAspect.put(aspectName, sameAspect);
+            }
+            for (int earlier : sameAspect) {
+                int cmp = compareWithinAspect(keys[index], keys[earlier]);
+                if (cmp > 0) {
+                    addEdge(successors, inDegree, earlier, index);
+                }
+                else if (cmp < 0) {
+                    addEdge(successors, inDegree, index, earlier);
+                }
+            }
+            sameAspect.add(index);
+        }
+
+        PriorityQueue<Integer> ready = new PriorityQueue<>(size);
+        for (int index : level) {
+            if (!inDegree.containsKey(index)) {
+                ready.add(index);
+            }
+        }
+        int[] order = new int[size];
+        int count = 0;
+        while (!ready.isEmpty()) {
+            int index = ready.poll();
+            order[count++] = index;
+            List<Integer> next = successors.get(index);
+            if (next != null) {
+                for (int successor : next) {
+                    int remaining = inDegree.get(successor) - 1;
+                    inDegree.put(successor, remaining);
+                    if (remaining == 0) {
+                        ready.add(successor);
+                    }
+                }
+            }
+        }
+        /** 还有没排上的, 说明有环. **/
+        return (count == size ? order : null);
+    }
+
+    private static void addEdge(Map<Integer, List<Integer>> successors, Map<Integer, Integer> inDegree, int from, int to) {
+        List<Integer> next = successors.get(from);
+        if (next == null) {
+            next = new ArrayList<>(2);
+            successors.put(from, next);
+        }
+        next.add(to);
+        Integer degree = inDegree.get(to);
+        inDegree.put(to, degree != null ? degree + 1 : 1);
+    }
+
+    /**
+     * 和 AspectJPrecedenceComparator#comparePrecedenceWithinAspect 一样:
+     * 有 After 类通知的话, 后声明的优先级高; 否则先声明的优先级高.
+     */
+    private static int compareWithinAspect(PrecedenceKey advisor1, PrecedenceKey advisor2) {
+        int delta = advisor1.declarationOrder - advisor2.declarationOrder;
+        if (delta == 0) {
+            return 0;
+        }
+        boolean oneOrOtherIsAfterAdvice = (advisor1.afterAdvice || advisor2.afterAdvice);
+        if (oneOrOtherIsAfterAdvice) {
+            return (delta < 0 ? 1 : -1);
+        }
+        return (delta < 0 ? -1 : 1);
+    }
+
+
+    /**
+     * 一个 Advisor 的排序依据, 只算一次.
+     * 自身的 compareTo 只比优先级(PriorityOrdered + order), 用来分组.
+     */
+    private static final class PrecedenceKey implements Comparable<PrecedenceKey> {
+
+        private final boolean priorityOrdered;
+
+        private final int order;
+
+        /** 没有切面信息的为 null. **/
+        private final String aspectName;
+
+        private final int declarationOrder;
+
+        private final boolean afterAdvice;
+
+        PrecedenceKey(Advisor advisor) {
+            this.priorityOrdered = (advisor instanceof PriorityOrdered);
+            this.order = ORDER_READER.getOrder(advisor);
+            AspectJPrecedenceInformation precedenceInfo = AspectJAopUtils.getAspectJPrecedenceInformationFor(advisor);
+            this.aspectName = (precedenceInfo != null ? precedenceInfo.getAspectName() : null);
+            this.declarationOrder = (precedenceInfo != null ? precedenceInfo.getDeclarationOrder() : 0);
+            this.afterAdvice = AspectJAopUtils.isAfterAdvice(advisor);
+        }
+
+        @Override
+        public int compareTo(PrecedenceKey other) {
+            if (this.priorityOrdered != other.priorityOrdered) {
+                return (this.priorityOrdered ? -1 : 1);
+            }
+            return Integer.compare(this.order, other.order);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return (this == other || (other instanceof PrecedenceKey && compareTo((PrecedenceKey) other) == 0));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.order + (this.priorityOrdered ? 1 : 0);
+        }
+    }
+
+
+    /** 只为了拿到 AnnotationAwareOrderComparator 的 getOrder, 和 AspectJPrecedenceComparator 用的同一套规则. **/
+    @SuppressWarnings("serial")
+    private static final class OrderReader extends AnnotationAwareOrderComparator {
+
+        @Override
+        public int getOrder(Object obj) {
+            return super.getOrder(obj);
+        }
+    }
+
+
+    /** 一组 Advisor, 按引用、按顺序比较. **/
+    private static final class AdvisorsKey {
+
+        private final Advisor[] advisors;
+
+        private final int hashCode;
+
+        AdvisorsKey(Advisor[] advisors) {
+            this.advisors = advisors;
+            int result = 1;
+            for (Advisor advisor : advisors) {
+                result = 31 * result + System.identityHashCode(advisor);
+            }
+            this.hashCode = result;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof AdvisorsKey)) {
+                return false;
+            }
+            Advisor[] otherAdvisors = ((AdvisorsKey) other).advisors;
+            if (this.hashCode != other.hashCode() || this.advisors.length != otherAdvisors.length) {
+                return false;
+            }
+            for (int i = 0; i < this.advisors.length; i++) {
+                if (this.advisors[i] != otherAdvisors[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+    }
+
+}
@@ -8,18 +8,15 @@ package resource.creator;
 
 import org.springframework.aop.Advisor;
 import org.springframework.aop.aspectj.annotation.AspectJAdvisorFactory;
-import org.springframework.aop.aspectj.annotation.BeanFactoryAspectJAdvisorsBuilder;
-import org.springframework.aop.aspectj.annotation.ReflectiveAspectJAdvisorFactory;
-import org.springframework.aop.aspectj.autoproxy.AspectJAwareAdvisorAutoProxyCreator;
-import org.springframework.aop.framework.autoproxy.BeanFactoryAdvisorRetrievalHelper;
 import org.springframework.beans.factory.ListableBeanFactory;
 import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.util.Assert;
 import org.springframework.beans.factory.BeanFactoryAware;
+import resource.util.advisor.BeanFactoryAdvisorRetrievalHelper;
+import resource.util.aspect.BeanFactoryAspectJAdvisorsBuilder;
+import resource.util.aspect.ReflectiveAspectJAdvisorFactory;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Pattern;
 
 /**
  * 解析 @Aspect注解 的创建器.
@@ -28,7 +25,8 @@ import java.util.regex.Pattern;
  */
 public class AnnotationAwareAspectJAutoProxyCreator extends AspectJAwareAdvisorAutoProxyCreator {
 
-    private List<Pattern> includePatterns;
+    /** includePatterns 编译成的匹配器, 没配置就是 null. **/
+    private IncludePatternMatcher includePatterns;
 
     /**
      * 唯一实现类: ReflectiveAspectJAdvisorFactory.
@@ -48,12 +46,10 @@ public class AnnotationAwareAspectJAutoProxyCreator extends AspectJAwareAdvisorA
     /**
      * 支持我们自定义一个正则的模版,
      * isEligibleAspectBean()该方法使用此模版, 从而决定使用哪些Advisor.
+     * 所有的正则合在一起编译成一个匹配器: {@link IncludePatternMatcher}.
      */
     public void setIncludePatterns(List<String> patterns) {
-        this.includePatterns = new ArrayList<>(patterns.size());
-        for (String patternText : patterns) {
-            this.includePatterns.add(Pattern.compile(patternText));
-        }
+        this.includePatterns = new IncludePatternMatcher(patterns);
     }
 
     /** 可以自己实现一个 AspectJAdvisorFactory, 否则用默认的 ReflectiveAspectJAdvisorFactory. **/
@@ -126,12 +122,7 @@ public class AnnotationAwareAspectJAutoProxyCreator extends AspectJAwareAdvisorA
             return true;
         }
         else {
-            for (Pattern pattern : this.includePatterns) {
-                if (pattern.matcher(beanName).matches()) {
-                    return true;
-                }
-            }
-            return false;
+            return this.includePatterns.matches(beanName);
         }
     }
 
@@ -13,14 +13,16 @@ import org.springframework.aop.aspectj.AbstractAspectJAdvice;
 import org.springframework.aop.aspectj.AspectJPointcutAdvisor;
 import org.springframework.aop.aspectj.AspectJProxyUtils;
 import org.springframework.aop.aspectj.autoproxy.AspectJPrecedenceComparator;
-import org.springframework.aop.framework.autoproxy.AbstractAdvisorAutoProxyCreator;
 import org.springframework.aop.interceptor.ExposeInvocationInterceptor;
 import org.springframework.core.Ordered;
 import org.springframework.util.ClassUtils;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * @author wangzongyao on 2020/5/25
@@ -30,6 +32,29 @@ public class AspectJAwareAdvisorAutoProxyCreator extends AbstractAdvisorAutoProx
     /** 默认的排序器，它就不是根据Order来了，而是根据@Afeter @Before类似的标注来排序. **/
     private static final Comparator<Advisor> DEFAULT_PRECEDENCE_COMPARATOR = new AspectJPrecedenceComparator();
 
+    /**
+     * 候选 Advisor 里 {@link AspectJPointcutAdvisor} 的切面名, 给 {@link #shouldSkip} 用.
+     * shouldSkip 比 findEligibleAdvisors 先跑, 所以自己按引用比较 Advisor Bean 的缓存结果, 变了就重建.
+     */
+    private volatile AspectBeanNames aspectBeanNames;
+
+    /** 是否用 {@link AdvisorPrecedenceSorter} 代替 PartialOrder 排序, 结果一样, 默认开启. **/
+    private boolean fastPrecedenceSort = true;
+
+    private final AdvisorPrecedenceSorter precedenceSorter = new AdvisorPrecedenceSorter();
+
+    /**
+     * 关掉的话退回原来的 PartialOrder 排序.
+     * @see AdvisorPrecedenceSorter
+     */
+    public void setFastPrecedenceSort(boolean fastPrecedenceSort) {
+        this.fastPrecedenceSort = fastPrecedenceSort;
+    }
+
+    public boolean isFastPrecedenceSort() {
+        return this.fastPrecedenceSort;
+    }
+
     /**
      * 核心逻辑: 它重写了排序
      * 	这个排序和`org.aspectj.util`提供的PartialOrder和PartialComparable有关 具体不详叙了
@@ -37,6 +62,11 @@ public class AspectJAwareAdvisorAutoProxyCreator extends AbstractAdvisorAutoProx
      */
     @Override
     protected List<Advisor> sortAdvisors(List<Advisor> advisors) {
+        if (this.fastPrecedenceSort) {
+            List<Advisor> sorted = this.precedenceSorter.sort(advisors);
+            /** 有环的话 PartialOrder 也排不出来, 照旧走父类. **/
+            return (sorted != null ? sorted : super.sortAdvisors(advisors));
+        }
         List<PartiallyComparableAdvisorHolder> partiallyComparableAdvisors =
                 new ArrayList<>(advisors.size());
         for (Advisor element : advisors) {
@@ -78,17 +108,57 @@ public class AspectJAwareAdvisorAutoProxyCreator extends AbstractAdvisorAutoProx
      */
     @Override
     protected boolean shouldSkip(Class<?> beanClass, String beanName) {
-        /** 得到全部的增强. **/
-        List<Advisor> candidateAdvisors = findCandidateAdvisors();
+        /**
+         * 每个 Bean 都要来问一次, 以前是每次都拿全部的增强挨个比切面名, Advisor 多、Bean 多的时候就是平方级别的.
+         * 现在切面名放在一个 HashSet 里, Advisor Bean 的缓存结果换了(按引用比较) 才重建;
+         * 还没全部解析好(缓存结果为 null) 时照旧每次重新拿.
+         */
+        AspectBeanNames holder = this.aspectBeanNames;
+        List<Advisor> cachedAdvisors = getCachedAdvisorBeans();
+        if (holder == null || cachedAdvisors == null || holder.source != cachedAdvisors) {
+            Set<String> names = collectAspectBeanNames(findCandidateAdvisors());
+            holder = new AspectBeanNames(getCachedAdvisorBeans(), names);
+            this.aspectBeanNames = holder;
+        }
+        Set<String> aspectNames = holder.names;
+        if (beanName != null && aspectNames.contains(beanName)) {
+            return true;
+        }
+        /** 父类默认返回 false. **/
+        return super.shouldSkip(beanClass, beanName);
+    }
+
+    @Override
+    protected void candidateAdvisorsChanged(List<Advisor> candidateAdvisors) {
+        super.candidateAdvisorsChanged(candidateAdvisors);
+        this.aspectBeanNames = new AspectBeanNames(getCachedAdvisorBeans(), collectAspectBeanNames(candidateAdvisors));
+        this.precedenceSorter.clearCache();
+    }
+
+    private static Set<String> collectAspectBeanNames(List<Advisor> candidateAdvisors) {
+        Set<String> aspectNames = null;
         for (Advisor advisor : candidateAdvisors) {
             if (advisor instanceof AspectJPointcutAdvisor) {
-                if (((AbstractAspectJAdvice) advisor.getAdvice()).getAspectName().equals(beanName)) {
-                    return true;
+                if (aspectNames == null) {
+                    aspectNames = new HashSet<>();
                 }
+                aspectNames.add(((AbstractAspectJAdvice) advisor.getAdvice()).getAspectName());
             }
         }
-        /** 父类默认返回 false. **/
-        return super.shouldSkip(beanClass, beanName);
+        return (aspectNames != null ? aspectNames : Collections.<String>emptySet());
+    }
+
+    /** 切面名, 以及算它时 Advisor Bean 的缓存结果(按引用比较). **/
+    private static final class AspectBeanNames {
+
+        private final List<Advisor> source;
+
+        private final Set<String> names;
+
+        AspectBeanNames(List<Advisor> source, Set<String> names) {
+            this.source = source;
+            this.names = names;
+        }
     }
 
     private static class PartiallyComparableAdvisorHolder implements PartialOrder.PartialComparable {
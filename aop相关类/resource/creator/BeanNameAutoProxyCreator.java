@@ -12,6 +12,7 @@ import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.FactoryBean;
 import org.springframework.util.Assert;
 import org.springframework.util.PatternMatchUtils;
+import org.springframework.util.ReflectionUtils;
 import org.springframework.util.StringUtils;
 
 import java.util.ArrayList;
@@ -31,14 +32,42 @@ public class BeanNameAutoProxyCreator extends AbstractAutoProxyCreator {
     @Nullable
     private List<String> beanNames;
 
+    /** 普通 Bean 用的: 全部 mappedName. **/
+    @Nullable
+    private BeanNamePatternMatcher beanNameMatcher;
+
+    /** FactoryBean 用的: 以 & 开头的 mappedName, 去掉 & 之后. **/
+    @Nullable
+    private BeanNamePatternMatcher factoryBeanNameMatcher;
+
     public void setBeanNames(String... beanNames) {
         Assert.notEmpty(beanNames, "'beanNames' must not be empty");
         this.beanNames = new ArrayList<>(beanNames.length);
+        List<String> factoryBeanNames = new ArrayList<>();
         for (String mappedName : beanNames) {
             // 对mappedName做取出空白处理
-            this.beanNames.add(StringUtils.trimWhitespace(mappedName));
+            String trimmedName = StringUtils.trimWhitespace(mappedName);
+            this.beanNames.add(trimmedName);
+            if (trimmedName.startsWith(BeanFactory.FACTORY_BEAN_PREFIX)) {
+                factoryBeanNames.add(trimmedName.substring(BeanFactory.FACTORY_BEAN_PREFIX.length()));
+            }
         }
+        /** 子类重写了 isMatch 的话, 匹配规则就不是 simpleMatch 了, 预编译的匹配器用不上, 还是挨个调 isMatch. **/
+        if (isMatchOverridden()) {
+            this.beanNameMatcher = null;
+            this.factoryBeanNameMatcher = null;
+        }
+        else {
+            this.beanNameMatcher = new BeanNamePatternMatcher(this.beanNames);
+            this.factoryBeanNameMatcher = new BeanNamePatternMatcher(factoryBeanNames);
+        }
+    }
+
+    private boolean isMatchOverridden() {
+        return (ReflectionUtils.findMethod(getClass(), "isMatch", String.class, String.class).getDeclaringClass() !=
+                BeanNameAutoProxyCreator.class);
     }
+
     // simpleMatch并不是完整的正则。但是支持*这种通配符，其余的不支持哦
     protected boolean isMatch(String beanName, String mappedName) {
         return PatternMatchUtils.simpleMatch(mappedName, beanName);
@@ -52,6 +81,9 @@ public class BeanNameAutoProxyCreator extends AbstractAutoProxyCreator {
     protected Object[] getAdvicesAndAdvisorsForBean(
             Class<?> beanClass, String beanName, @Nullable TargetSource targetSource) {
 
+        if (this.beanNameMatcher != null) {
+            return (matchesBeanNameOrAlias(beanClass, beanName) ? PROXY_WITHOUT_ADDITIONAL_INTERCEPTORS : DO_NOT_PROXY);
+        }
         if (this.beanNames != null) {
             for (String mappedName : this.beanNames) {
                 // 显然这里面，如果你针对的是FactoryBean,也是兼容的~~~
@@ -82,6 +114,29 @@ public class BeanNameAutoProxyCreator extends AbstractAutoProxyCreator {
         }
         return DO_NOT_PROXY;
     }
+
+    /**
+     * 和上面的循环结果一样, 只是换成了预编译的匹配器: beanName 和每个 alias 各走一遍, 和配置了多少个名字无关.
+     */
+    private boolean matchesBeanNameOrAlias(Class<?> beanClass, String beanName) {
+        BeanNamePatternMatcher matcher = (FactoryBean.class.isAssignableFrom(beanClass) ?
+                this.factoryBeanNameMatcher : this.beanNameMatcher);
+        if (matcher.isEmpty()) {
+            return false;
+        }
+        if (matcher.matches(beanName)) {
+            return true;
+        }
+        BeanFactory beanFactory = getBeanFactory();
+        if (beanFactory != null) {
+            for (String alias : beanFactory.getAliases(beanName)) {
+                if (matcher.matches(alias)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
 }
 
 /**
@@ -0,0 +1,158 @@
+package resource.creator;
+
+import org.springframework.util.PatternMatchUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link BeanNameAutoProxyCreator#setBeanNames} 配置的名字预先编译成的匹配器, 语义和 {@link PatternMatchUtils#simpleMatch} 一样.
+ * 按通配符的位置分类: ↓
+ *     xxx      没有 *: HashSet, 一次 contains.
+ *     *        全都匹配.
+ *     xxx*     前缀树, 从头往后走.
+ *     *xxx     后缀树, 从尾往前走.
+ *     *xxx*    包含: 也放进前缀树(单独一棵), 从 beanName 的每个位置开始往后走.
+ *     其他(中间有 * 的) 还是逐个 simpleMatch, 这种一般很少.
+ * 于是不管配置了多少个名字, 匹配一个 beanName 基本就是把它走一遍.
+ * @author agent on 2026/10/17
+ */
+final class BeanNamePatternMatcher {
+
+    private final Set<String> exactNames = new HashSet<>();
+
+    private boolean matchAll = false;
+
+    private final TrieNode prefixes = new TrieNode();
+
+    /** 后缀倒过来存. **/
+    private final TrieNode suffixes = new TrieNode();
+
+    private final TrieNode infixes = new TrieNode();
+
+    private final List<String> otherPatterns = new ArrayList<>();
+
+    BeanNamePatternMatcher(Collection<String> patterns) {
+        for (String pattern : patterns) {
+            int firstIndex = pattern.indexOf('*');
+            int lastIndex = pattern.lastIndexOf('*');
+            if (firstIndex == -1) {
+                this.exactNames.add(pattern);
+            }
+            else if (pattern.length() == 1 || pattern.equals("**")) {
+                this.matchAll = true;
+            }
+            else if (firstIndex == lastIndex && lastIndex == pattern.length() - 1) {
+                this.prefixes.add(pattern, 0, pattern.length() - 1, false);
+            }
+            else if (firstIndex == lastIndex && firstIndex == 0) {
+                this.suffixes.add(pattern, 1, pattern.length(), true);
+            }
+            else if (firstIndex == 0 && lastIndex == pattern.length() - 1 &&
+                    pattern.indexOf('*', 1) == lastIndex) {
+                this.infixes.add(pattern, 1, pattern.length() - 1, false);
+            }
+            else {
+                this.otherPatterns.add(pattern);
+            }
+        }
+    }
+
+    boolean matches(String name) {
+        if (this.matchAll || this.exactNames.contains(name)) {
+            return true;
+        }
+        if (this.prefixes.matchesFrom(name, 0) || this.suffixes.matchesBackwardFrom(name, name.length() - 1)) {
+            return true;
+        }
+        if (!this.infixes.isEmpty()) {
+            for (int start = 0; start < name.length(); start++) {
+                if (this.infixes.matchesFrom(name, start)) {
+                    return true;
+                }
+            }
+        }
+        for (String pattern : this.otherPatterns) {
+            if (PatternMatchUtils.simpleMatch(pattern, name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean isEmpty() {
+        return (!this.matchAll && this.exactNames.isEmpty() && this.prefixes.isEmpty() &&
+                this.suffixes.isEmpty() && this.infixes.isEmpty() && this.otherPatterns.isEmpty());
+    }
+
+
+    /** 字符树, terminal 表示到这里为止是一个完整的前缀(或后缀、中缀). **/
+    private static final class TrieNode {
+
+        private Map<Character, TrieNode> children;
+
+        private boolean terminal;
+
+        /** 把 text[from, to) 加进来, reverse 为 true 时倒着加. **/
+        void add(String text, int from, int to, boolean reverse) {
+            TrieNode node = this;
+            for (int i = 0; i < to - from; i++) {
+                char c = text.charAt(reverse ? to - 1 - i : from + i);
+                if (node.children == null) {
+                    node.children = new HashMap<>();
+                }
+                TrieNode child = node.children.get(c);
+                if (child == null) {
+                    child = new TrieNode();
+                    node.children.put(c, child);
+                }
+                node = child;
+            }
+            node.terminal = true;
+        }
+
+        boolean isEmpty() {
+            return (!this.terminal && this.children == null);
+        }
+
+        /** 从 name[start] 往后走, 途中碰到 terminal 就算匹配. **/
+        boolean matchesFrom(String name, int start) {
+            TrieNode node = this;
+            for (int i = start; ; i++) {
+                if (node.terminal) {
+                    return true;
+                }
+                if (i == name.length() || node.children == null) {
+                    return false;
+                }
+                node = node.children.get(name.charAt(i));
+                if (node == null) {
+                    return false;
+                }
+            }
+        }
+
+        /** 从 name[start] 往前走. **/
+        boolean matchesBackwardFrom(String name, int start) {
+            TrieNode node = this;
+            for (int i = start; ; i--) {
+                if (node.terminal) {
+                    return true;
+                }
+                if (i < 0 || node.children == null) {
+                    return false;
+                }
+                node = node.children.get(name.charAt(i));
+                if (node == null) {
+                    return false;
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,157 @@
+package resource.creator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * {@link AnnotationAwareAspectJAutoProxyCreator#setIncludePatterns} 的正则们合在一起的匹配器.
+ * 原来是每个 beanName 把所有正则挨个 matches 一遍, 正则多了就慢. 现在分三类: ↓
+ *     纯字面量(没有任何正则元字符): 放进 HashSet, 一次 contains.
+ *     字面量前缀 + ".*": 放进前缀树, 沿着 beanName 走一遍就知道有没有前缀命中.
+ *     其他的: 拼成一个 (?:p1)|(?:p2)|... 的大正则, 只 matches 一次.
+ *         拼进去会改变意思、甚至编译不过的, 单独匹配: ↓
+ *             反向引用(\1、\k<name>): 组号乱了.
+ *             命名分组(?<name>...): 两个正则用了同一个名字, 大正则编译不过.
+ *             \Q: 没有配对的 \E 时, 后面拼上的 | 和其他正则都被当成字面量.
+ *             打开了 x(COMMENTS) 标志的: # 注释一直到结尾, 把后面拼上的都注释掉.
+ * 再加上按 beanName 缓存结果, 同一个名字只算一次.
+ * 注: JDK 的正则不是 DFA, 大正则内部还是逐个分支尝试, 省的是每个 Pattern 各自建 Matcher、各自走一遍的开销.
+ * @author agent on 2026/10/17
+ */
+final class IncludePatternMatcher {
+
+    private static final String REGEX_META_CHARS = "\\[](){}.*+?^$|";
+
+    /** 反向引用、命名分组(不含 (?<= 和 (?<! 这两种后行断言)、\Q、带 x 的内嵌标志. **/
+    private static final Pattern SEPARATE_CONSTRUCTS = Pattern.compile(
+            "\\\\(?:[1-9]|k<|Q)|\\(\\?<[a-zA-Z]|\\(\\?[a-zA-Z-]*x[a-zA-Z-]*[:)]");
+
+    /** 缓存最多放这么多个名字, 满了就整个清掉. **/
+    private static final int MAX_CACHE_SIZE = 4096;
+
+    private final Set<String> literals = new HashSet<>();
+
+    private final PrefixNode prefixes = new PrefixNode();
+
+    private boolean hasPrefixes = false;
+
+    private final Pattern combined;
+
+    private final List<Pattern> separate = new ArrayList<>();
+
+    private final Map<String, Boolean> cache = new ConcurrentHashMap<>(256);
+
+    IncludePatternMatcher(List<String> patterns) {
+        StringBuilder alternation = new StringBuilder();
+        for (String pattern : patterns) {
+            /** 先编译一遍: 写错了的正则在这里就报错, 和原来一样. **/
+            Pattern.compile(pattern);
+            if (isLiteral(pattern)) {
+                this.literals.add(pattern);
+            }
+            else if (pattern.endsWith(".*") && isLiteral(pattern.substring(0, pattern.length() - 2))) {
+                this.prefixes.add(pattern.substring(0, pattern.length() - 2));
+                this.hasPrefixes = true;
+            }
+            else if (needsSeparateMatching(pattern)) {
+                this.separate.add(Pattern.compile(pattern));
+            }
+            else {
+                if (alternation.length() > 0) {
+                    alternation.append('|');
+                }
+                alternation.append("(?:").append(pattern).append(')');
+            }
+        }
+        this.combined = (alternation.length() > 0 ? Pattern.compile(alternation.toString()) : null);
+    }
+
+    boolean matches(String beanName) {
+        Boolean cached = this.cache.get(beanName);
+        if (cached == null) {
+            cached = doMatch(beanName);
+            if (this.cache.size() >= MAX_CACHE_SIZE) {
+                this.cache.clear();
+            }
+            this.cache.put(beanName, cached);
+        }
+        return cached;
+    }
+
+    private boolean doMatch(String beanName) {
+        if (this.literals.contains(beanName)) {
+            return true;
+        }
+        if (this.hasPrefixes && this.prefixes.matchesPrefixOf(beanName)) {
+            return true;
+        }
+        if (this.combined != null && this.combined.matcher(beanName).matches()) {
+            return true;
+        }
+        for (Pattern pattern : this.separate) {
+            if (pattern.matcher(beanName).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean needsSeparateMatching(String pattern) {
+        return SEPARATE_CONSTRUCTS.matcher(pattern).find();
+    }
+
+    private static boolean isLiteral(String pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            if (REGEX_META_CHARS.indexOf(pattern.charAt(i)) != -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /** 前缀树: terminal 表示到这里为止是某个前缀. **/
+    private static final class PrefixNode {
+
+        private final Map<Character, PrefixNode> children = new HashMap<>();
+
+        private boolean terminal;
+
+        void add(String prefix) {
+            PrefixNode node = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                char c = prefix.charAt(i);
+                PrefixNode child = node.children.get(c);
+                if (child == null) {
+                    child = new PrefixNode();
+                    node.children.put(c, child);
+                }
+                node = child;
+            }
+            node.terminal = true;
+        }
+
+        boolean matchesPrefixOf(String name) {
+            PrefixNode node = this;
+            for (int i = 0; ; i++) {
+                if (node.terminal) {
+                    return true;
+                }
+                if (i == name.length()) {
+                    return false;
+                }
+                node = node.children.get(name.charAt(i));
+                if (node == null) {
+                    return false;
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,15 @@
+package resource.methodinterceptor;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+/**
+ * 标记接口: 这个拦截器不会在 {@link #invoke(MethodInvocation)} 返回之后还留着 MethodInvocation.
+ * 也就是说: 不把它存到字段里、不交给别的线程、不在返回之后再调 proceed(). 要留的话用 invocableClone() 复制一份.
+ * 一条链上的拦截器全都实现了它, 并且打开了 AdvisedSupport 的 reuseInvocation, MethodInvocation 才会按线程复用.
+ * @see resource.advised.AdvisedSupport#setReuseInvocation(boolean)
+ * @author agent on 2026/10/17
+ */
+public interface NonRetainingMethodInterceptor extends MethodInterceptor {
+
+}
@@ -0,0 +1,18 @@
+package resource.pointcut;
+
+import org.springframework.aop.MethodMatcher;
+
+import java.lang.reflect.Method;
+
+/**
+ * 标记接口: 运行时的 {@link #matches(Method, Class, Object...)} 只看参数的类型(和 targetClass), 不看参数的值.
+ * 比如只用 args(..) 按类型匹配的切点: 同一个方法, 参数的运行时类型一样, 结果就一样.
+ * 实现了它的动态 MethodMatcher, 编译过的拦截器链会按 (targetClass, 每个参数的类) 缓存匹配结果, 预热之后每次调用只是一次查表.
+ * 参数为 null 也算一种 "类型", 所以 null 和非 null 的结果可以不一样.
+ * 注意: 结果依赖参数的值(比如 if()、@args 以外按值绑定后再判断的) 的不能实现它, 否则会拿到别的值算出来的结果.
+ * @see resource.advised.util.CompiledInterceptorChain
+ * @author agent on 2026/10/17
+ */
+public interface TypeOnlyMethodMatcher extends MethodMatcher {
+
+}
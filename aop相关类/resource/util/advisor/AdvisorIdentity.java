@@ -0,0 +1,79 @@
+package resource.util.advisor;
+
+import org.springframework.aop.Advisor;
+import org.springframework.aop.IntroductionAdvisor;
+import org.springframework.aop.PointcutAdvisor;
+import org.springframework.aop.aspectj.DeclareParentsAdvisor;
+import org.springframework.aop.aspectj.annotation.AspectJAdvisorFactory;
+import org.springframework.aop.aspectj.annotation.InstantiationModelAwarePointcutAdvisorImpl;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 判断两批候选 Advisor 是不是 "同一批".
+ * Advisor Bean、单例切面的 Advisor 每次拿到的都是同一个实例, 按引用比就行.
+ * 非单例的切面(prototype 的切面 Bean、perthis/pertarget) 每次都会重新解析出新的 Advisor 实例,
+ * 但切面名、声明顺序、通知方法、切点都没变, 变的只是背后的切面实例. 这种也算同一批,
+ * 依赖候选 Advisor 的缓存(筛选结果、索引、快照指纹、排序) 就不会每创建一个 Bean 都作废一次.
+ *
+ * 注意: 算 "同一批" 不代表可以把旧的实例拿来用. 缓存里只能记下标, 用的时候到这次的候选 Advisor 里按下标取,
+ * 不然 perthis 的切面实例会被不同的 Bean 共用.
+ * @author agent on 2026/10/17
+ */
+public final class AdvisorIdentity {
+
+    private AdvisorIdentity() {
+    }
+
+    /** 个数一样, 每个位置上都是 {@link #isSameAdvisor 同一个} Advisor. **/
+    public static boolean isSameCandidates(Advisor[] previous, List<Advisor> current) {
+        if (previous.length != current.size()) {
+            return false;
+        }
+        int i = 0;
+        for (Advisor advisor : current) {
+            if (!isSameAdvisor(previous[i++], advisor)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 同一个实例; 或者是同一个切面重新解析出来的:
+     *     通知方法: 切面名(beanName) + 声明顺序 + 通知方法都一样, 切点是同一个(解析切面时共用的).
+     *     DeclareParents: 引入的接口、ClassFilter 都一样.
+     *     perthis/pertarget 切面前面负责实例化切面的那个(AspectJAdvisorFactory 的内部类): 切点是同一个.
+     */
+    public static boolean isSameAdvisor(Advisor previous, Advisor current) {
+        if (previous == current) {
+            return true;
+        }
+        if (previous == null || current == null || previous.getClass() != current.getClass()) {
+            return false;
+        }
+        if (previous instanceof InstantiationModelAwarePointcutAdvisorImpl) {
+            InstantiationModelAwarePointcutAdvisorImpl before = (InstantiationModelAwarePointcutAdvisorImpl) previous;
+            InstantiationModelAwarePointcutAdvisorImpl after = (InstantiationModelAwarePointcutAdvisorImpl) current;
+            return (before.getAspectName().equals(after.getAspectName()) &&
+                    before.getDeclarationOrder() == after.getDeclarationOrder() &&
+                    before.getAspectJAdviceMethod().equals(after.getAspectJAdviceMethod()) &&
+                    before.getDeclaredPointcut() == after.getDeclaredPointcut() &&
+                    before.isLazy() == after.isLazy());
+        }
+        if (previous instanceof DeclareParentsAdvisor) {
+            IntroductionAdvisor before = (IntroductionAdvisor) previous;
+            IntroductionAdvisor after = (IntroductionAdvisor) current;
+            return (Arrays.equals(before.getInterfaces(), after.getInterfaces()) &&
+                    before.getClassFilter().equals(after.getClassFilter()) &&
+                    before.getAdvice().getClass() == after.getAdvice().getClass());
+        }
+        Class<?> enclosingClass = previous.getClass().getEnclosingClass();
+        if (enclosingClass != null && AspectJAdvisorFactory.class.isAssignableFrom(enclosingClass) &&
+                previous instanceof PointcutAdvisor) {
+            return (((PointcutAdvisor) previous).getPointcut() == ((PointcutAdvisor) current).getPointcut());
+        }
+        return false;
+    }
+}
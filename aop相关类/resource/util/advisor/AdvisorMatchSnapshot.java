@@ -0,0 +1,507 @@
+package resource.util.advisor;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.ClassFilter;
+import org.springframework.aop.IntroductionAdvisor;
+import org.springframework.aop.Pointcut;
+import org.springframework.aop.PointcutAdvisor;
+import org.springframework.aop.aspectj.AspectJExpressionPointcut;
+import org.springframework.aop.aspectj.annotation.InstantiationModelAwarePointcutAdvisorImpl;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ConcurrentReferenceHashMap;
+import org.springframework.util.ReflectionUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 持久化的 "哪些 Advisor 作用在哪个 Bean 上" 的快照.
+ * 每次启动 {@code findAdvisorsThatCanApply} 算出来的结果都一样, 于是上次启动时记下来, 写到一个内存映射的文件里,
+ * 下次启动时直接回放, 跳过切点匹配.
+ *
+ * 能不能回放看两个 hash: ↓
+ *     候选 Advisor 的定义: {@link #fingerprint(List)}, 变了整个快照作废.
+ *     Bean 的类(及其父类、接口)的字节码: {@link #hashClass(Class)}, 变了这个 Bean 的记录作废.
+ * 打开快照时只建一个 key -> 偏移量 的表, 具体的记录要用的时候才去读、去校验. 用完了要 {@link #close()}, 解除映射.
+ *
+ * 文件格式(大端): ↓
+ *     int 魔数, int 格式版本, long 候选 Advisor 的指纹, int 记录数
+ *     每条记录: beanName, 类名(int 长度 + UTF-8), long 类的 hash, int 个数, int[] 在候选 Advisor 里的下标
+ * @see resource.creator.AbstractAdvisorAutoProxyCreator#setMatchSnapshotFile(File)
+ * @author agent on 2026/10/17
+ */
+public final class AdvisorMatchSnapshot implements Closeable {
+
+    private static final Log logger = LogFactory.getLog(AdvisorMatchSnapshot.class);
+
+    private static final int MAGIC = 0x414F5053;
+
+    private static final int FORMAT_VERSION = 1;
+
+    /** 类的字节码读不到(比如运行时生成的类) 时的 hash, 这种类不记录也不回放. **/
+    public static final long UNHASHABLE = 0L;
+
+    /** 候选 Advisor 里有指纹盖不住的(比如切点没有可比较的配置), 这批候选 Advisor 不记录也不回放. **/
+    public static final long UNFINGERPRINTABLE = 0L;
+
+    /** 原生的切点指示符, 表达式里其他的 xxx(..) 就是命名切点的引用. **/
+    private static final Set<String> POINTCUT_DESIGNATORS = new HashSet<>(Arrays.asList(
+            "execution", "call", "within", "withincode", "this", "target", "args", "bean", "if",
+            "get", "set", "handler", "initialization", "preinitialization", "staticinitialization",
+            "adviceexecution", "cflow", "cflowbelow", "@annotation", "@within", "@target", "@args"));
+
+    /** 每个类自己的字节码 hash, 同一个父类、接口只读一次. 软引用, 不拖住 ClassLoader. **/
+    private static final Map<Class<?>, Long> bytecodeHashCache = new ConcurrentReferenceHashMap<>(256);
+
+    private final ByteBuffer buffer;
+
+    /** close 时拿写锁, 读记录时拿读锁: 解除映射之后就不能再碰 buffer 了. **/
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+
+    private boolean closed = false;
+
+    private final long advisorFingerprint;
+
+    /** beanName + '\0' + 类名 -> 记录的偏移量. **/
+    private final Map<String, Integer> offsets;
+
+    private AdvisorMatchSnapshot(ByteBuffer buffer, long advisorFingerprint, Map<String, Integer> offsets) {
+        this.buffer = buffer;
+        this.advisorFingerprint = advisorFingerprint;
+        this.offsets = offsets;
+    }
+
+    /**
+     * 打开快照文件.
+     * @return 文件不存在、格式不对的话返回 null
+     */
+    public static AdvisorMatchSnapshot open(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            /** 映射之后就和 channel 无关了, 关掉也没事. **/
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                    unmap(buffer);
+                    return null;
+                }
+                long advisorFingerprint = buffer.getLong();
+                int count = buffer.getInt();
+                Map<String, Integer> offsets = new HashMap<>(count * 2);
+                for (int i = 0; i < count; i++) {
+                    int offset = buffer.position();
+                    String key = key(readString(buffer), readString(buffer));
+                    buffer.position(buffer.position() + 8);
+                    int size = buffer.getInt();
+                    buffer.position(buffer.position() + size * 4);
+                    offsets.put(key, offset);
+                }
+                return new AdvisorMatchSnapshot(buffer, advisorFingerprint, offsets);
+            }
+            catch (RuntimeException ex) {
+                unmap(buffer);
+                throw ex;
+            }
+        }
+        catch (IOException | RuntimeException ex) {
+            logger.warn("Ignoring unreadable advisor match snapshot [" + file + "]", ex);
+            return null;
+        }
+    }
+
+    public long getAdvisorFingerprint() {
+        return this.advisorFingerprint;
+    }
+
+    public int size() {
+        return this.offsets.size();
+    }
+
+    /**
+     * 回放一条记录.
+     * @param classHash 当前 beanClass 的 {@link #hashClass(Class)}
+     * @return 在候选 Advisor 里的下标; 没有记录、类变了、快照已经关闭了返回 null
+     */
+    public int[] lookup(String beanName, Class<?> beanClass, long classHash) {
+        Integer offset = this.offsets.get(key(beanName, beanClass.getName()));
+        if (offset == null || classHash == UNHASHABLE) {
+            return null;
+        }
+        this.closeLock.readLock().lock();
+        try {
+            if (this.closed) {
+                return null;
+            }
+            /** 多线程读, 每次复制一个自己的游标. **/
+            ByteBuffer buffer = this.buffer.duplicate();
+            buffer.position(offset);
+            readString(buffer);
+            readString(buffer);
+            if (buffer.getLong() != classHash) {
+                return null;
+            }
+            int[] indices = new int[buffer.getInt()];
+            for (int i = 0; i < indices.length; i++) {
+                indices[i] = buffer.getInt();
+            }
+            return indices;
+        }
+        finally {
+            this.closeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 解除文件映射. 不等 GC 回收 buffer, 映射马上释放(Windows 上映射着的文件换不掉).
+     * 关闭之后 {@link #lookup} 一律返回 null.
+     */
+    @Override
+    public void close() {
+        this.closeLock.writeLock().lock();
+        try {
+            if (!this.closed) {
+                this.closed = true;
+                unmap(this.buffer);
+            }
+        }
+        finally {
+            this.closeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 写快照: 先写临时文件, 再整个换过去, 不会留下写了一半的文件.
+     * records 要遍历两遍(先算大小再写), 传进来的必须是写的过程中不会变的列表.
+     */
+    public static void write(File file, long advisorFingerprint, List<Record> records) throws IOException {
+        int size = 20;
+        for (Record record : records) {
+            size += 8 + record.beanName.length + record.className.length + 8 + 4 + record.indices.length * 4;
+        }
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory [" + parent + "]");
+        }
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (RandomAccessFile raf = new RandomAccessFile(tempFile, "rw"); FileChannel channel = raf.getChannel()) {
+            raf.setLength(size);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(advisorFingerprint).putInt(records.size());
+            for (Record record : records) {
+                buffer.putInt(record.beanName.length).put(record.beanName);
+                buffer.putInt(record.className.length).put(record.className);
+                buffer.putLong(record.classHash).putInt(record.indices.length);
+                for (int index : record.indices) {
+                    buffer.putInt(index);
+                }
+            }
+            buffer.force();
+            unmap(buffer);
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * 候选 Advisor 的指纹: 顺序、类型、切点表达式、切面名和通知方法.
+     * 表达式里引用了命名切点的, 把定义命名切点的类(不带类名的就是切面类自己) 的字节码 hash 也算进去, 命名切点改了指纹跟着变.
+     * 其他切点自己重写了 toString 的, 把 toString 也算进去.
+     * 有一个 Advisor 盖不住(切点没重写 toString、命名切点的类找不到) 就返回 {@link #UNFINGERPRINTABLE}, 这批候选 Advisor 不能回放.
+     */
+    public static long fingerprint(List<Advisor> candidateAdvisors) {
+        MessageDigest digest = newDigest();
+        for (Advisor advisor : candidateAdvisors) {
+            StringBuilder description = new StringBuilder(advisor.getClass().getName());
+            Class<?> aspectClass = null;
+            if (advisor instanceof InstantiationModelAwarePointcutAdvisorImpl) {
+                InstantiationModelAwarePointcutAdvisorImpl aspectAdvisor = (InstantiationModelAwarePointcutAdvisorImpl) advisor;
+                aspectClass = aspectAdvisor.getAspectMetadata().getAspectClass();
+                description.append('|').append(aspectAdvisor.getAspectName())
+                        .append('|').append(aspectAdvisor.getDeclarationOrder())
+                        .append('|').append(aspectAdvisor.getAspectJAdviceMethod());
+            }
+            if (advisor instanceof PointcutAdvisor) {
+                Pointcut pointcut = ((PointcutAdvisor) advisor).getPointcut();
+                description.append('|').append(pointcut.getClass().getName());
+                if (pointcut instanceof AspectJExpressionPointcut) {
+                    String expression = ((AspectJExpressionPointcut) pointcut).getExpression();
+                    description.append('|').append(expression);
+                    if (!describePointcutReferences(expression, aspectClass, advisor.getClass().getClassLoader(), description)) {
+                        return UNFINGERPRINTABLE;
+                    }
+                }
+                else if (hasOwnToString(pointcut)) {
+                    /** 像 JdkRegexpMethodPointcut 这种, toString 里带着它的配置. **/
+                    description.append('|').append(pointcut);
+                }
+                else {
+                    return UNFINGERPRINTABLE;
+                }
+            }
+            else if (advisor instanceof IntroductionAdvisor) {
+                ClassFilter classFilter = ((IntroductionAdvisor) advisor).getClassFilter();
+                if (!hasOwnToString(classFilter)) {
+                    return UNFINGERPRINTABLE;
+                }
+                description.append('|').append(classFilter);
+            }
+            digest.update(description.append('\n').toString().getBytes(StandardCharsets.UTF_8));
+        }
+        long fingerprint = toLong(digest.digest());
+        return (fingerprint != UNFINGERPRINTABLE ? fingerprint : 1L);
+    }
+
+    /**
+     * 表达式里的命名切点: 带类名的(com.xx.Pointcuts.service()) 算那个类的字节码 hash, 不带的算切面类的.
+     * @return 有盖不住的(类加载不到、读不到字节码、不是切面却用了不带类名的引用) 返回 false
+     */
+    private static boolean describePointcutReferences(String expression, Class<?> aspectClass,
+            ClassLoader classLoader, StringBuilder description) {
+
+        for (String reference : findPointcutReferences(expression)) {
+            int lastDot = reference.lastIndexOf('.');
+            Class<?> declaringClass = aspectClass;
+            if (lastDot != -1) {
+                try {
+                    declaringClass = ClassUtils.forName(reference.substring(0, lastDot), classLoader);
+                }
+                catch (Throwable ex) {
+                    return false;
+                }
+            }
+            long classHash = (declaringClass != null ? hashClass(declaringClass) : UNHASHABLE);
+            if (classHash == UNHASHABLE) {
+                return false;
+            }
+            description.append('|').append(reference).append('=').append(classHash);
+        }
+        return true;
+    }
+
+    /** 表达式里不是原生指示符的 xxx(..), 原生指示符括号里面的内容不看. **/
+    private static List<String> findPointcutReferences(String expression) {
+        List<String> references = new ArrayList<>();
+        int length = expression.length();
+        int i = 0;
+        while (i < length) {
+            char c = expression.charAt(i);
+            if (!Character.isJavaIdentifierStart(c) && c != '@') {
+                i++;
+                continue;
+            }
+            int start = i++;
+            while (i < length && (Character.isJavaIdentifierPart(expression.charAt(i)) || expression.charAt(i) == '.')) {
+                i++;
+            }
+            String name = expression.substring(start, i);
+            int next = i;
+            while (next < length && Character.isWhitespace(expression.charAt(next))) {
+                next++;
+            }
+            if (next < length && expression.charAt(next) == '(') {
+                if (!POINTCUT_DESIGNATORS.contains(name)) {
+                    references.add(name);
+                }
+                i = skipParentheses(expression, next);
+            }
+        }
+        return references;
+    }
+
+    /** 从 '(' 开始, 返回配对的 ')' 之后的位置. **/
+    private static int skipParentheses(String expression, int open) {
+        int depth = 0;
+        for (int i = open; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            if (c == '(') {
+                depth++;
+            }
+            else if (c == ')' && --depth == 0) {
+                return i + 1;
+            }
+        }
+        return expression.length();
+    }
+
+    /**
+     * beanClass 及其父类、接口的字节码的 hash, JDK 自己的类不算.
+     * 每个类自己的字节码只读一次, 缓存起来, 这里只是把整个继承体系的 hash 再合一下.
+     * 有一个类读不到字节码就返回 {@link #UNHASHABLE}.
+     */
+    public static long hashClass(Class<?> beanClass) {
+        Set<Class<?>> hierarchy = new LinkedHashSet<>();
+        collectHierarchy(beanClass, hierarchy);
+        long hash = 17;
+        for (Class<?> type : hierarchy) {
+            if (type.getClassLoader() == null) {
+                continue;
+            }
+            long bytecodeHash = hashBytecode(type);
+            if (bytecodeHash == UNHASHABLE) {
+                return UNHASHABLE;
+            }
+            hash = 31 * hash + bytecodeHash;
+        }
+        return (hash != UNHASHABLE ? hash : 1L);
+    }
+
+    private static long hashBytecode(Class<?> type) {
+        Long cached = bytecodeHashCache.get(type);
+        if (cached != null) {
+            return cached;
+        }
+        long hash = UNHASHABLE;
+        String resource = type.getName().replace('.', '/') + ".class";
+        try (InputStream in = type.getClassLoader().getResourceAsStream(resource)) {
+            if (in != null) {
+                MessageDigest digest = newDigest();
+                digest.update(type.getName().getBytes(StandardCharsets.UTF_8));
+                byte[] chunk = new byte[8192];
+                int read;
+                while ((read = in.read(chunk)) != -1) {
+                    digest.update(chunk, 0, read);
+                }
+                hash = toLong(digest.digest());
+                if (hash == UNHASHABLE) {
+                    hash = 1L;
+                }
+            }
+        }
+        catch (IOException ex) {
+            hash = UNHASHABLE;
+        }
+        bytecodeHashCache.put(type, hash);
+        return hash;
+    }
+
+    private static void collectHierarchy(Class<?> type, Set<Class<?>> hierarchy) {
+        if (type == null || !hierarchy.add(type)) {
+            return;
+        }
+        collectHierarchy(type.getSuperclass(), hierarchy);
+        for (Class<?> intf : type.getInterfaces()) {
+            collectHierarchy(intf, hierarchy);
+        }
+    }
+
+    private static boolean hasOwnToString(Object object) {
+        try {
+            return object.getClass().getMethod("toString").getDeclaringClass() != Object.class;
+        }
+        catch (NoSuchMethodException ex) {
+            return false;
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-1 not supported", ex);
+        }
+    }
+
+    /**
+     * 马上解除映射: JDK 9 以后用 Unsafe.invokeCleaner, JDK 8 用 DirectBuffer 的 cleaner.
+     * 都调不了就只能等 GC 回收了.
+     */
+    private static void unmap(ByteBuffer buffer) {
+        if (!buffer.isDirect()) {
+            return;
+        }
+        try {
+            Class<?> unsafeClass = ClassUtils.forName("sun.misc.Unsafe", null);
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            ReflectionUtils.makeAccessible(theUnsafe);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            return;
+        }
+        catch (NoSuchMethodException ex) {
+            /** JDK 8, 走下面的. **/
+        }
+        catch (Throwable ex) {
+            logger.debug("Could not unmap advisor match snapshot buffer", ex);
+            return;
+        }
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            ReflectionUtils.makeAccessible(cleanerMethod);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                Method clean = cleaner.getClass().getMethod("clean");
+                ReflectionUtils.makeAccessible(clean);
+                clean.invoke(cleaner);
+            }
+        }
+        catch (Throwable ex) {
+            logger.debug("Could not unmap advisor match snapshot buffer", ex);
+        }
+    }
+
+    private static long toLong(byte[] bytes) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (bytes[i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static String key(String beanName, String className) {
+        return beanName + '\0' + className;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+    /** 一条记录: 这个 Bean 用到了候选 Advisor 里的哪几个. **/
+    public static final class Record {
+
+        private final byte[] beanName;
+
+        private final byte[] className;
+
+        private final long classHash;
+
+        private final int[] indices;
+
+        public Record(String beanName, Class<?> beanClass, long classHash, int[] indices) {
+            this.beanName = beanName.getBytes(StandardCharsets.UTF_8);
+            this.className = beanClass.getName().getBytes(StandardCharsets.UTF_8);
+            this.classHash = classHash;
+            this.indices = indices;
+        }
+    }
+
+}
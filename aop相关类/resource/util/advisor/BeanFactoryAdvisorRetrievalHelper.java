@@ -17,7 +17,11 @@ import org.springframework.util.Assert;
 import org.springframework.aop.aspectj.autoproxy.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 帮助 {@link AspectJAwareAdvisorAutoProxyCreator} 从 IoC 中查找 Advisor.class 类型的通知.
@@ -35,6 +39,18 @@ public class BeanFactoryAdvisorRetrievalHelper {
      */
     private volatile String[] cachedAdvisorBeanNames;
 
+    /** 拿 cachedAdvisorBeanNames 时容器里 Bean 定义的个数, 个数变了说明有新注册的 Bean, 名字要重新拿. **/
+    private volatile int cachedBeanDefinitionCount = -1;
+
+    /** 已经实例化好的单例 Advisor: beanName -> Advisor, 不用每次都 getBean. **/
+    private final Map<String, Advisor> resolvedAdvisors = new ConcurrentHashMap<>();
+
+    /** 因为正在创建而被跳过的 Advisor, 下次只需要重试它们. **/
+    private final Set<String> skippedInCreation = ConcurrentHashMap.newKeySet();
+
+    /** 全都解析好了(没有被跳过的、也没有原型的) 的完整结果, 之后直接复制一份返回. **/
+    private volatile List<Advisor> fullyResolvedAdvisors;
+
     public BeanFactoryAdvisorRetrievalHelper(ConfigurableListableBeanFactory beanFactory) {
         Assert.notNull(beanFactory, "ListableBeanFactory must not be null");
         this.beanFactory = beanFactory;
@@ -42,40 +58,88 @@ public class BeanFactoryAdvisorRetrievalHelper {
 
     /**
      * 核心方法.
+     * 每处理一个 Bean 都会调一次, 所以: ↓
+     *     单例的 Advisor 实例化之后就缓存起来, 不再 getBean、isCurrentlyInCreation.
+     *     正在创建被跳过的记下来, 下次只重试它们.
+     *     全都解析好了之后, 直接返回缓存结果的拷贝.
+     * 本容器的 Bean 定义个数变了(有新注册的), 才重新拿 Advisor 的 beanName, 已经实例化好的照样复用.
+     * 注意: 只看本容器的定义个数, 父容器后注册的、直接 registerSingleton 的感知不到.
      */
     public List<Advisor> findAdvisorBeans() {
         // Determine list of advisor bean names, if not cached already.
         String[] advisorNames = this.cachedAdvisorBeanNames;
-        if (advisorNames == null) {
+        int beanDefinitionCount = this.beanFactory.getBeanDefinitionCount();
+        if (advisorNames == null || beanDefinitionCount != this.cachedBeanDefinitionCount) {
             /**
              * 也会从祖先容器中拿到 Advisor类型 的 BeanName, 但是不会去实例化它们.
              * 而是先判断是否合格: {@link #isEligibleBean(String)}, 只有合格的才会再通过 {@link BeanFactory#getBean(String)} 去实例化.
              * 因为不合格的你在这里实例化了也没有, 那你实例化它干啥呢 ?
              */
-            advisorNames = BeanFactoryUtils.beanNamesForTypeIncludingAncestors(
-                    this.beanFactory, Advisor.class, true, false);
+            advisorNames = BeanFactoryUtils.beanNamesForTypeIncludingAncestors(this.beanFactory, Advisor.class, true, false);
             this.cachedAdvisorBeanNames = advisorNames;
+            this.cachedBeanDefinitionCount = beanDefinitionCount;
+            this.fullyResolvedAdvisors = null;
+            this.resolvedAdvisors.keySet().retainAll(Arrays.asList(advisorNames));
+        }
+        List<Advisor> fullyResolved = this.fullyResolvedAdvisors;
+        if (fullyResolved != null) {
+            return new ArrayList<>(fullyResolved);
         }
         if (advisorNames.length == 0) {
             return new ArrayList<>();
         }
 
         List<Advisor> advisors = new ArrayList<>();
+        boolean complete = true;
         for (String name : advisorNames) {
+            Advisor resolved = this.resolvedAdvisors.get(name);
+            if (resolved != null) {
+                advisors.add(resolved);
+                continue;
+            }
             /** 检验这个bean是否是合格的. **/
             if (isEligibleBean(name)) {
                 if (this.beanFactory.isCurrentlyInCreation(name)) {
-                    /** 要创建的 Bean 就是 当前Bean: 啥也不干. 要不你想自己切你自己吗 ? **/
+                    /** 要创建的 Bean 就是 当前Bean: 啥也不干. 要不你想自己切你自己吗 ? 下次再试. **/
+                    this.skippedInCreation.add(name);
+                    complete = false;
                 }
                 else {
                     /** 从 IoC 中拿出来, 实例化. **/
-                    advisors.add(this.beanFactory.getBean(name, Advisor.class));
+                    Advisor advisor = this.beanFactory.getBean(name, Advisor.class);
+                    advisors.add(advisor);
+                    if (this.skippedInCreation.remove(name) && logger.isDebugEnabled()) {
+                        logger.debug("Resolved advisor bean '" + name + "' which was previously in creation");
+                    }
+                    if (this.beanFactory.isSingleton(name)) {
+                        this.resolvedAdvisors.put(name, advisor);
+                    }
+                    else {
+                        /** 原型的 Advisor 每次都要 getBean, 结果就不能整个缓存了. **/
+                        complete = false;
+                    }
                 }
             }
         }
+        if (complete) {
+            this.fullyResolvedAdvisors = new ArrayList<>(advisors);
+        }
         return advisors;
     }
 
+    /**
+     * 缓存的完整结果本身(不是拷贝), 只用来按引用判断 "候选 Advisor 变没变": 重新解析过就是另一个 List.
+     * 还没全部解析好(有被跳过的、有原型的)、或者 Bean 定义个数变了(下次 {@link #findAdvisorBeans()} 会重新解析) 时返回 null.
+     * 不要修改它.
+     */
+    public List<Advisor> getCachedAdvisors() {
+        List<Advisor> fullyResolved = this.fullyResolvedAdvisors;
+        if (fullyResolved == null || this.beanFactory.getBeanDefinitionCount() != this.cachedBeanDefinitionCount) {
+            return null;
+        }
+        return fullyResolved;
+    }
+
     /**
      * 检验这个bean是否是合格的, 这里默认返回 true.
      * 当前类只有一个子类, 是 {@link AbstractAdvisorAutoProxyCreator}里面的内部类: , 对 此方法 进行了重写,
@@ -0,0 +1,288 @@
+package resource.util.advisor;
+
+import org.springframework.aop.Advisor;
+import org.springframework.aop.Pointcut;
+import org.springframework.aop.PointcutAdvisor;
+import org.springframework.aop.aspectj.AspectJExpressionPointcut;
+import org.springframework.aop.support.AopUtils;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 候选 Advisor 的类级别索引.
+ * {@link AopUtils#findAdvisorsThatCanApply(List, Class)} 会拿每个 Advisor 的 ClassFilter、MethodMatcher 去匹配每个 Bean 的每个方法,
+ * Advisor 多、Bean 多的时候, 容器启动的大头就耗在这了. 但是大部分切点表达式一眼就能看出来只和某些类有关: ↓
+ *     within(com.foo.service..*)                 只和 com.foo.service 包下的类有关
+ *     execution(* com.foo.dao.*Dao.*(..))        只和 com.foo.dao 包下的类型(及其子类、实现类)有关
+ *     @within(com.foo.Audited)                   只和标了 @Audited 的类有关
+ * 于是按 包前缀、注解类型 把 Advisor 分桶, 每个 Bean 只拿它的类继承体系(父类、接口)可能碰上的桶, 再交给 AopUtils 去精确匹配.
+ * 看不懂的切点(自定义 Pointcut、带 || 和 ! 的表达式、引用的命名切点、Introduction 等)统统放进兜底桶, 每个 Bean 都要匹配.
+ *
+ * 索引只会多给, 不会少给: 筛出来的 Advisor 保持原来的相对顺序, 所以最终结果和不用索引完全一样.
+ * @see resource.creator.AbstractAdvisorAutoProxyCreator#findAdvisorsThatCanApply
+ * @author agent on 2026/10/17
+ */
+public final class CandidateAdvisorIndex {
+
+    private final Advisor[] advisors;
+
+    /** 包前缀 -> 下标. 这里的 "包前缀" 也可能是外部类的全名(切的是内部类). **/
+    private final Map<String, BitSet> byPackagePrefix = new HashMap<>();
+
+    /** 注解类型全名 -> 下标. **/
+    private final Map<String, BitSet> byAnnotationType = new HashMap<>();
+
+    /** 兜底桶: 每个 Bean 都要匹配. **/
+    private final BitSet fallback = new BitSet();
+
+    private CandidateAdvisorIndex(List<Advisor> candidateAdvisors) {
+        this.advisors = candidateAdvisors.toArray(new Advisor[candidateAdvisors.size()]);
+        for (int i = 0; i < this.advisors.length; i++) {
+            index(i, this.advisors[i]);
+        }
+    }
+
+    public static CandidateAdvisorIndex build(List<Advisor> candidateAdvisors) {
+        return new CandidateAdvisorIndex(candidateAdvisors);
+    }
+
+    /**
+     * 是不是同一批候选 Advisor 建的索引. 非单例切面重新解析出来的 Advisor 也算同一批.
+     * @see AdvisorIdentity#isSameCandidates
+     */
+    public boolean isFor(List<Advisor> candidateAdvisors) {
+        return AdvisorIdentity.isSameCandidates(this.advisors, candidateAdvisors);
+    }
+
+    /**
+     * 可能作用在 beanClass 上的 Advisor, 保持原来的顺序.
+     * 按 beanClass 的整个继承体系去查: execution 的声明类型是会匹配到子类、实现类上的.
+     * 返回的是 candidateAdvisors 里的实例(必须是 {@link #isFor} 的那一批), 不是建索引时的:
+     * 非单例切面每次解析出来的 Advisor 背后的切面实例不一样, 不能混用.
+     */
+    public List<Advisor> getCandidates(Class<?> beanClass, List<Advisor> candidateAdvisors) {
+        BitSet matched = (BitSet) this.fallback.clone();
+        if (!this.byPackagePrefix.isEmpty() || !this.byAnnotationType.isEmpty()) {
+            for (Class<?> type : collectHierarchy(beanClass)) {
+                if (!this.byPackagePrefix.isEmpty()) {
+                    String name = type.getName().replace('$', '.');
+                    for (int dot = name.indexOf('.'); dot != -1; dot = name.indexOf('.', dot + 1)) {
+                        BitSet bucket = this.byPackagePrefix.get(name.substring(0, dot));
+                        if (bucket != null) {
+                            matched.or(bucket);
+                        }
+                    }
+                }
+                if (!this.byAnnotationType.isEmpty()) {
+                    for (Annotation annotation : type.getDeclaredAnnotations()) {
+                        BitSet bucket = this.byAnnotationType.get(annotation.annotationType().getName());
+                        if (bucket != null) {
+                            matched.or(bucket);
+                        }
+                    }
+                }
+            }
+        }
+        List<Advisor> candidates = new ArrayList<>(matched.cardinality());
+        for (int i = matched.nextSetBit(0); i >= 0; i = matched.nextSetBit(i + 1)) {
+            candidates.add(candidateAdvisors.get(i));
+        }
+        return candidates;
+    }
+
+    public int size() {
+        return this.advisors.length;
+    }
+
+    /** 兜底桶里有多少个, 越少索引越有用. **/
+    public int getFallbackCount() {
+        return this.fallback.cardinality();
+    }
+
+    @Override
+    public String toString() {
+        return "CandidateAdvisorIndex: " + this.advisors.length + " advisors, " + this.byPackagePrefix.size() +
+                " package prefixes, " + this.byAnnotationType.size() + " annotation types, " +
+                this.fallback.cardinality() + " in fallback";
+    }
+
+
+    private void index(int position, Advisor advisor) {
+        String expression = getExpression(advisor);
+        if (expression != null) {
+            for (String conjunct : splitConjuncts(expression)) {
+                if (indexConjunct(position, conjunct)) {
+                    return;
+                }
+            }
+        }
+        this.fallback.set(position);
+    }
+
+    /**
+     * 只认 AspectJExpressionPointcut, 其他的 Pointcut 都看不懂.
+     * IntroductionAdvisor 也不是 PointcutAdvisor, 直接进兜底桶.
+     */
+    private static String getExpression(Advisor advisor) {
+        if (!(advisor instanceof PointcutAdvisor)) {
+            return null;
+        }
+        Pointcut pointcut = ((PointcutAdvisor) advisor).getPointcut();
+        if (!(pointcut instanceof AspectJExpressionPointcut)) {
+            return null;
+        }
+        return ((AspectJExpressionPointcut) pointcut).getExpression();
+    }
+
+    /**
+     * 按 && / and 拆开. 只要有一个子条件能确定范围, 整个表达式就只可能在这个范围内匹配.
+     * 有 ||、or、!、not 的表达式一律看不懂, 返回空.
+     */
+    private static List<String> splitConjuncts(String expression) {
+        List<String> conjuncts = new ArrayList<>();
+        String normalized = " " + expression.replace('\n', ' ').replace('\t', ' ') + " ";
+        if (normalized.contains("||") || normalized.contains("!") ||
+                normalized.contains(" or ") || normalized.contains(" not ")) {
+            return conjuncts;
+        }
+        for (String part : normalized.replace(" and ", " && ").split("&&")) {
+            conjuncts.add(stripOuterParentheses(part.trim()));
+        }
+        return conjuncts;
+    }
+
+    private boolean indexConjunct(int position, String conjunct) {
+        if (conjunct.startsWith("within(") && conjunct.endsWith(")")) {
+            return addToBucket(this.byPackagePrefix, toPrefix(inner(conjunct, "within(")), position);
+        }
+        if (conjunct.startsWith("execution(") && conjunct.endsWith(")")) {
+            return addToBucket(this.byPackagePrefix, toPrefix(declaringTypeOf(inner(conjunct, "execution("))), position);
+        }
+        if ((conjunct.startsWith("@within(") || conjunct.startsWith("@target(")) && conjunct.endsWith(")")) {
+            String annotationType = inner(conjunct, conjunct.substring(0, conjunct.indexOf('(') + 1)).trim();
+            /** 没有 '.' 的是绑定的参数名, 不是注解类型. **/
+            if (annotationType.indexOf('.') > 0 && isLiteral(annotationType)) {
+                return addToBucket(this.byAnnotationType, annotationType, position);
+            }
+        }
+        return false;
+    }
+
+    private static boolean addToBucket(Map<String, BitSet> buckets, String key, int position) {
+        if (key == null) {
+            return false;
+        }
+        BitSet bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = new BitSet();
+            buckets.put(key, bucket);
+        }
+        bucket.set(position);
+        return true;
+    }
+
+    /**
+     * execution(修饰符? 返回类型 声明类型?.方法名(参数) throws?) 里的声明类型.
+     * 没写声明类型的(比如 execution(* save*(..))) 返回 null.
+     */
+    private static String declaringTypeOf(String signature) {
+        int paren = signature.indexOf('(');
+        if (paren == -1) {
+            return null;
+        }
+        String head = signature.substring(0, paren).trim();
+        String namePattern = head.substring(head.lastIndexOf(' ') + 1);
+        int dot = namePattern.lastIndexOf('.');
+        if (dot <= 0) {
+            return null;
+        }
+        /** com.foo..save 这种, 声明类型是 com.foo.. **/
+        return namePattern.substring(0, namePattern.charAt(dot - 1) == '.' ? dot + 1 : dot);
+    }
+
+    /**
+     * 类型模式 -> 包前缀, 也就是第一个通配符之前的那几段.
+     *     com.foo.service..*   -> com.foo.service
+     *     com.foo.*Service     -> com.foo
+     *     com.foo.Bar          -> com.foo
+     * 带 + 的(子类型)可能在任何包下, 返回 null.
+     */
+    private static String toPrefix(String typePattern) {
+        if (typePattern == null) {
+            return null;
+        }
+        String pattern = typePattern.trim();
+        if (pattern.indexOf('+') != -1 || pattern.indexOf(' ') != -1 || pattern.indexOf('(') != -1) {
+            return null;
+        }
+        int wildcard = pattern.indexOf("..");
+        int star = pattern.indexOf('*');
+        String prefix;
+        if (wildcard != -1 && (star == -1 || wildcard < star)) {
+            prefix = pattern.substring(0, wildcard);
+        }
+        else {
+            String literal = (star != -1 ? pattern.substring(0, star) : pattern);
+            int dot = literal.lastIndexOf('.');
+            prefix = (dot > 0 ? literal.substring(0, dot) : "");
+        }
+        return (!prefix.isEmpty() && isLiteral(prefix) ? prefix : null);
+    }
+
+    private static boolean isLiteral(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c != '.' && !Character.isJavaIdentifierPart(c)) {
+                return false;
+            }
+        }
+        return !name.startsWith(".") && !name.endsWith(".");
+    }
+
+    private static String inner(String conjunct, String designator) {
+        return conjunct.substring(designator.length(), conjunct.length() - 1);
+    }
+
+    /** (a && b) -> a && b, 只剥最外层成对的括号. **/
+    private static String stripOuterParentheses(String part) {
+        while (part.length() > 1 && part.charAt(0) == '(' && part.charAt(part.length() - 1) == ')') {
+            int depth = 0;
+            for (int i = 0; i < part.length() - 1; i++) {
+                char c = part.charAt(i);
+                if (c == '(') {
+                    depth++;
+                }
+                else if (c == ')' && --depth == 0) {
+                    return part;
+                }
+            }
+            part = part.substring(1, part.length() - 1).trim();
+        }
+        return part;
+    }
+
+    /** 自己 + 所有父类 + 所有接口(包括父接口). **/
+    private static Set<Class<?>> collectHierarchy(Class<?> beanClass) {
+        Set<Class<?>> hierarchy = new LinkedHashSet<>();
+        for (Class<?> type = beanClass; type != null; type = type.getSuperclass()) {
+            collectInterfaces(type, hierarchy);
+        }
+        return hierarchy;
+    }
+
+    private static void collectInterfaces(Class<?> type, Set<Class<?>> hierarchy) {
+        if (hierarchy.add(type)) {
+            for (Class<?> intf : type.getInterfaces()) {
+                collectInterfaces(intf, hierarchy);
+            }
+        }
+    }
+
+}
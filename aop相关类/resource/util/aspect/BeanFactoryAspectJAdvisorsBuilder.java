@@ -11,14 +11,21 @@ import org.springframework.aop.Advisor;
 import org.springframework.aop.aspectj.annotation.*;
 import org.springframework.beans.factory.BeanFactoryUtils;
 import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
 import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
 import resource.util.advisor.BeanFactoryAdvisorRetrievalHelper;
+import resource.util.index.AopIndex;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * 帮助 {@link AnnotationAwareAspectJAutoProxyCreator} 查找加了@Aspect注解的类, 并解析出其中的增强.
@@ -45,6 +52,15 @@ public class BeanFactoryAspectJAdvisorsBuilder {
 
     private final Map<String, MetadataAwareAspectInstanceFactory> aspectFactoryCache = new ConcurrentHashMap<>();
 
+    /** 是否并行找切面. **/
+    private boolean parallelDiscovery = false;
+
+    /** 并行找切面用的线程池, 由调用方提供, 没有的话还是串行. **/
+    private ForkJoinPool discoveryPool;
+
+    /** 是否用编译期生成的索引代替扫描全部 Bean. **/
+    private boolean useAopIndex = false;
+
     public BeanFactoryAspectJAdvisorsBuilder(ListableBeanFactory beanFactory) {
         this(beanFactory, new ReflectiveAspectJAdvisorFactory(beanFactory));
     }
@@ -65,56 +81,32 @@ public class BeanFactoryAspectJAdvisorsBuilder {
         List<String> aspectNames = this.aspectBeanNames;
 
         if (aspectNames == null) {
-            synchronized (this) {
-                aspectNames = this.aspectBeanNames;
-                if (aspectNames == null) {
-                    /** 从这里开始, 从IoC中拿到全部BeanName, 并拿到其类型. **/
-                    List<Advisor> advisors = new LinkedList<>();
-                    aspectNames = new LinkedList<String>();
-                    String[] beanNames = BeanFactoryUtils.beanNamesForTypeIncludingAncestors(
-                            this.beanFactory, Object.class, true, false);
-                    for (String beanName : beanNames) {
-                        if (!isEligibleBean(beanName)) {
-                            continue;
-                        }
-                        Class<?> beanType = this.beanFactory.getType(beanName);
-                        if (beanType == null) {
-                            continue;
-                        }
-                        /**
-                         * 筛选出类中加 @Aspect注解 的 Bean.
-                         * 根据 type 和 beanName 创建 {@link AspectMetadata}.
-                         * isAspect(): 类(或父类)上要加了@Aspect注解或者 属性名不是以非 "ajc$"开头的, 估计是Aspect编译器.
-                         */
-                        if (this.advisorFactory.isAspect(beanType)) {
-                            aspectNames.add(beanName);
-                            AspectMetadata amd = new AspectMetadata(beanType, beanName);
-                            if (amd.getAjType().getPerClause().getKind() == PerClauseKind.SINGLETON) {
-                                MetadataAwareAspectInstanceFactory factory = new BeanFactoryAspectInstanceFactory(this.beanFactory, beanName);
-                                List<Advisor> classAdvisors = this.advisorFactory.getAdvisors(factory);
-                                if (this.beanFactory.isSingleton(beanName)) {
-                                    this.advisorsCache.put(beanName, classAdvisors);
-                                }
-                                else {
-                                    this.aspectFactoryCache.put(beanName, factory);
-                                }
-                                advisors.addAll(classAdvisors);
-                            }
-                            else {
-                                // Per target or per this.
-                                if (this.beanFactory.isSingleton(beanName)) {
-                                    throw new IllegalArgumentException("Bean with name '" + beanName +
-                                            "' is a singleton, but aspect instantiation model is not singleton");
-                                }
-                                MetadataAwareAspectInstanceFactory factory =
-                                        new PrototypeAspectInstanceFactory(this.beanFactory, beanName);
-                                this.aspectFactoryCache.put(beanName, factory);
-                                advisors.addAll(this.advisorFactory.getAdvisors(factory));
+            if (this.parallelDiscovery && this.discoveryPool != null) {
+                /** 并行: 在锁外解析, 锁只用来发布. 同时有别的线程也解析完了的话, 先发布的算数, 这次的结果扔掉. **/
+                List<AspectDiscovery> discoveries = discoverAspectsInParallel();
+                synchronized (this) {
+                    if (this.aspectBeanNames == null) {
+                        return publish(discoveries);
+                    }
+                    aspectNames = this.aspectBeanNames;
+                }
+            }
+            else {
+                synchronized (this) {
+                    aspectNames = this.aspectBeanNames;
+                    if (aspectNames == null) {
+                        /** 从这里开始, 从IoC中拿到全部BeanName, 并拿到其类型. **/
+                        List<AspectDiscovery> discoveries = new ArrayList<>();
+                        for (String beanName : getEligibleBeanNames()) {
+                            Class<?> beanType = findAspectType(beanName);
+                            if (beanType != null) {
+                                AspectDiscovery discovery = prepareAspect(beanName, beanType);
+                                discovery.advisors = this.advisorFactory.getAdvisors(discovery.factory);
+                                discoveries.add(discovery);
                             }
                         }
+                        return publish(discoveries);
                     }
-                    this.aspectBeanNames = aspectNames;
-                    return advisors;
                 }
             }
         }
@@ -137,6 +129,47 @@ public class BeanFactoryAspectJAdvisorsBuilder {
         return advisors;
     }
 
+    /**
+     * 并行找切面: 默认关闭, 并且还要用 {@link #setDiscoveryPool} 给一个线程池才会生效.
+     * Bean 很多的时候, 挨个 getType、解析 Advisor 要花掉几百毫秒. 打开之后分两步, 都是 调用线程 + 线程池 一起做:
+     *   1. 按 beanName 分段判断类型: 工作线程只做 {@code getType(beanName, false)}(不初始化 FactoryBean) 和 isAspect.
+     *   2. 每个切面的 getAdvisors 交给线程池. AspectMetadata、instance factory 这些要碰 BeanFactory 的, 还在调用线程上做.
+     * 结果按 beanName 原来的顺序拼起来, 所以和串行时一模一样. 整个过程不持有 this 的锁, 只在发布结果时拿一下.
+     *
+     * 调用线程不会等工作线程: 分段领完之后, 工作线程还没做完的, 调用线程自己再做一遍, 谁先做完用谁的.
+     * 容器刷新时调用线程一般持有单例锁, 工作线程万一卡在这把锁上也不会死锁, 不用超时, 也不会拖慢启动.
+     */
+    public void setParallelDiscovery(boolean parallelDiscovery) {
+        this.parallelDiscovery = parallelDiscovery;
+    }
+
+    public boolean isParallelDiscovery() {
+        return this.parallelDiscovery;
+    }
+
+    /**
+     * 并行找切面用的线程池, 由调用方创建和关闭. 不用 {@link ForkJoinPool#commonPool()}:
+     * 工作线程可能被单例锁卡住, 不能拖累同一个 JVM 里其他用公共池的代码.
+     */
+    public void setDiscoveryPool(ForkJoinPool discoveryPool) {
+        this.discoveryPool = discoveryPool;
+    }
+
+    /**
+     * 用 {@link AopIndex} 找切面: 默认关闭.
+     * 打开之后只看索引里的切面类对应的 Bean, 不再对每个 beanName 都 getType.
+     * 没有索引、索引过期时自动退回扫描.
+     * 注意: 切面和 Advisor 不同, 不扫描就认不出没进索引的切面(依赖的 jar 里的), 所以这些 jar 也要带索引, 否则别打开.
+     * Advisor Bean 不用索引, 照常按类型扫描.
+     */
+    public void setUseAopIndex(boolean useAopIndex) {
+        this.useAopIndex = useAopIndex;
+    }
+
+    public boolean isUseAopIndex() {
+        return this.useAopIndex;
+    }
+
     /**
      * 很像.
      *
@@ -145,4 +178,204 @@ public class BeanFactoryAspectJAdvisorsBuilder {
         return true;
     }
 
+    private String[] getCandidateBeanNames() {
+        if (this.useAopIndex) {
+            ClassLoader classLoader = (this.beanFactory instanceof ConfigurableBeanFactory ?
+                    ((ConfigurableBeanFactory) this.beanFactory).getBeanClassLoader() : ClassUtils.getDefaultClassLoader());
+            AopIndex index = AopIndex.loadIndex(classLoader);
+            String[] beanNames = (index != null ? index.getBeanNamesFor(this.beanFactory, true, classLoader) : null);
+            if (beanNames != null) {
+                return beanNames;
+            }
+        }
+        return BeanFactoryUtils.beanNamesForTypeIncludingAncestors(this.beanFactory, Object.class, true, false);
+    }
+
+    /** 候选 beanName 里, {@link #isEligibleBean(String)} 的那些. 在调用线程上过滤. **/
+    private String[] getEligibleBeanNames() {
+        List<String> eligibleNames = new ArrayList<>();
+        for (String beanName : getCandidateBeanNames()) {
+            if (isEligibleBean(beanName)) {
+                eligibleNames.add(beanName);
+            }
+        }
+        return eligibleNames.toArray(new String[eligibleNames.size()]);
+    }
+
+    /**
+     * 串行: Bean 的类型是切面就返回它, 否则返回 null.
+     * 筛选出类中加 @Aspect注解 的 Bean.
+     * isAspect(): 类(或父类)上要加了@Aspect注解或者 属性名不是以非 "ajc$"开头的, 估计是Aspect编译器.
+     */
+    private Class<?> findAspectType(String beanName) {
+        Class<?> beanType = this.beanFactory.getType(beanName);
+        return (beanType != null && this.advisorFactory.isAspect(beanType) ? beanType : null);
+    }
+
+    /**
+     * 并行找切面, 结果按 beanName 原来的顺序.
+     * 第一步工作线程用 getType(beanName, false) 判断不出来的(比如要初始化 FactoryBean 才知道类型),
+     * 调用线程用 {@link #findAspectType(String)} 再来一遍, 所以找到的切面和串行时一样.
+     */
+    private List<AspectDiscovery> discoverAspectsInParallel() {
+        final String[] beanNames = getEligibleBeanNames();
+        final AtomicReferenceArray<Object> types = new AtomicReferenceArray<>(beanNames.length);
+        runInParallel(types, BEAN_NAMES_PER_TASK, new IndexedWork() {
+            @Override
+            public Object run(int index, boolean callerThread) {
+                Class<?> beanType;
+                if (callerThread) {
+                    beanType = findAspectType(beanNames[index]);
+                    return (beanType != null ? beanType : NOT_AN_ASPECT);
+                }
+                beanType = beanFactory.getType(beanNames[index], false);
+                /** 类型判断不出来的留 null, 调用线程再用 getType(beanName) 试. **/
+                if (beanType == null) {
+                    return null;
+                }
+                return (advisorFactory.isAspect(beanType) ? beanType : NOT_AN_ASPECT);
+            }
+        });
+
+        final List<AspectDiscovery> discoveries = new ArrayList<>();
+        for (int i = 0; i < beanNames.length; i++) {
+            Object type = types.get(i);
+            if (type != NOT_AN_ASPECT) {
+                discoveries.add(prepareAspect(beanNames[i], (Class<?>) type));
+            }
+        }
+        AtomicReferenceArray<Object> advisors = new AtomicReferenceArray<>(discoveries.size());
+        runInParallel(advisors, 1, new IndexedWork() {
+            @Override
+            public Object run(int index, boolean callerThread) {
+                return advisorFactory.getAdvisors(discoveries.get(index).factory);
+            }
+        });
+        for (int i = 0; i < discoveries.size(); i++) {
+            discoveries.get(i).advisors = (List<Advisor>) advisors.get(i);
+        }
+        return discoveries;
+    }
+
+    /**
+     * 把 results 的每个下标交给 work 算: 按 chunk 个一段, 线程池和调用线程一起领. 领完了调用线程不等,
+     * 工作线程还没做完(或者返回 null、抛了异常)的下标, 调用线程自己再算一遍. 每个下标以先写进去的结果为准.
+     * work 对同一个下标算几次结果都要一样; 调用线程上算的不能返回 null, 异常照常抛给调用方.
+     */
+    private void runInParallel(final AtomicReferenceArray<Object> results, final int chunk, final IndexedWork work) {
+        final int count = results.length();
+        final AtomicInteger cursor = new AtomicInteger();
+        int workers = Math.min(this.discoveryPool.getParallelism(), (count + chunk - 1) / chunk - 1);
+        for (int i = 0; i < workers; i++) {
+            this.discoveryPool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        drain(results, chunk, cursor, work, false);
+                    }
+                    catch (RuntimeException ex) {
+                        /** 没算出来的留给调用线程, 异常也由调用线程自己再碰到一次. **/
+                    }
+                }
+            });
+        }
+        drain(results, chunk, cursor, work, true);
+        for (int i = 0; i < count; i++) {
+            if (results.get(i) == null) {
+                results.compareAndSet(i, null, work.run(i, true));
+            }
+        }
+    }
+
+    private static void drain(AtomicReferenceArray<Object> results, int chunk, AtomicInteger cursor,
+                              IndexedWork work, boolean callerThread) {
+        int count = results.length();
+        int from;
+        while ((from = cursor.getAndAdd(chunk)) < count) {
+            for (int i = from, to = Math.min(from + chunk, count); i < to; i++) {
+                Object result = work.run(i, callerThread);
+                if (result != null) {
+                    results.compareAndSet(i, null, result);
+                }
+            }
+        }
+    }
+
+    /**
+     * 切面 Bean 解析 Advisor 之前要做的: AspectMetadata 和 instance factory. 这里要碰 BeanFactory, 只在调用线程上做.
+     * 这里不碰缓存, 缓存统一在 {@link #publish(List)} 里放.
+     */
+    private AspectDiscovery prepareAspect(String beanName, Class<?> beanType) {
+        /** 根据 type 和 beanName 创建 {@link AspectMetadata}. **/
+        AspectMetadata amd = new AspectMetadata(beanType, beanName);
+        if (amd.getAjType().getPerClause().getKind() == PerClauseKind.SINGLETON) {
+            MetadataAwareAspectInstanceFactory factory = new BeanFactoryAspectInstanceFactory(this.beanFactory, beanName);
+            return new AspectDiscovery(beanName, factory, this.beanFactory.isSingleton(beanName));
+        }
+        else {
+            // Per target or per this.
+            if (this.beanFactory.isSingleton(beanName)) {
+                throw new IllegalArgumentException("Bean with name '" + beanName +
+                        "' is a singleton, but aspect instantiation model is not singleton");
+            }
+            MetadataAwareAspectInstanceFactory factory =
+                    new PrototypeAspectInstanceFactory(this.beanFactory, beanName);
+            return new AspectDiscovery(beanName, factory, false);
+        }
+    }
+
+    /**
+     * 把找到的切面放进缓存, 发布 aspectBeanNames. 调用方要持有锁.
+     * 单例切面缓存 Advisor, 其他的缓存 factory, 下次再解析.
+     */
+    private List<Advisor> publish(List<AspectDiscovery> discoveries) {
+        List<Advisor> advisors = new LinkedList<>();
+        List<String> aspectNames = new LinkedList<String>();
+        for (AspectDiscovery discovery : discoveries) {
+            aspectNames.add(discovery.beanName);
+            if (discovery.cacheAdvisors) {
+                this.advisorsCache.put(discovery.beanName, discovery.advisors);
+            }
+            else {
+                this.aspectFactoryCache.put(discovery.beanName, discovery.factory);
+            }
+            advisors.addAll(discovery.advisors);
+        }
+        this.aspectBeanNames = aspectNames;
+        return advisors;
+    }
+
+
+    /** 一个切面 Bean 的解析结果. advisors 在 factory 准备好之后才填上. **/
+    private static final class AspectDiscovery {
+
+        private final String beanName;
+
+        private final MetadataAwareAspectInstanceFactory factory;
+
+        /** true: 缓存 Advisor; false: 缓存 factory. **/
+        private final boolean cacheAdvisors;
+
+        private List<Advisor> advisors;
+
+        AspectDiscovery(String beanName, MetadataAwareAspectInstanceFactory factory, boolean cacheAdvisors) {
+            this.beanName = beanName;
+            this.factory = factory;
+            this.cacheAdvisors = cacheAdvisors;
+        }
+    }
+
+
+    /** 并行结果里 "确定不是切面" 的标记, 和 "没判断出来"(null) 区分开. **/
+    private static final Object NOT_AN_ASPECT = new Object();
+
+    /** 并行时每段最多这么多个 beanName. **/
+    private static final int BEAN_NAMES_PER_TASK = 64;
+
+    /** {@link #runInParallel} 里对一个下标要做的事. callerThread: 是不是在调用线程上. **/
+    private interface IndexedWork {
+
+        Object run(int index, boolean callerThread);
+    }
+
 }
@@ -26,6 +26,8 @@ import org.springframework.util.StringUtils;
 import org.springframework.util.comparator.CompoundComparator;
 import org.springframework.util.comparator.InstanceComparator;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
@@ -34,9 +36,14 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 服务于 {@link BeanFactoryAspectJAdvisorsBuilder}.
+ * 非单例的切面, 每次 findCandidateAdvisors 都要调一次 {@link #getAdvisors}, 也就是每处理一个 Bean 都要来一次.
+ * 所以按切面类缓存了一份 "模板": 排好序的通知方法 + 解析好的切点, 以及各通知方法的参数名.
+ * 之后再来只需要绑定新的 aspectInstanceFactory, new 几个 Advisor 就行了, 不用再反射、排序、解析切点表达式.
  *
  * @author wangzongyao on 2020/5/25
  */
@@ -70,6 +77,14 @@ public class ReflectiveAspectJAdvisorFactory extends AbstractAspectJAdvisorFacto
 
     private final BeanFactory beanFactory;
 
+    /** 切面类 -> 模板. **/
+    private transient Map<Class<?>, AspectTemplate> templateCache = new ConcurrentHashMap<>();
+
+    /** 通知方法 -> 参数名, 没有参数名的放 NO_PARAMETER_NAMES. **/
+    private transient Map<Method, String[]> parameterNameCache = new ConcurrentHashMap<>();
+
+    private static final String[] NO_PARAMETER_NAMES = new String[0];
+
 
     /**
      * Create a new {@code ReflectiveAspectJAdvisorFactory}.
@@ -96,19 +111,18 @@ public class ReflectiveAspectJAdvisorFactory extends AbstractAspectJAdvisorFacto
     public List<Advisor> getAdvisors(MetadataAwareAspectInstanceFactory aspectInstanceFactory) {
         Class<?> aspectClass = aspectInstanceFactory.getAspectMetadata().getAspectClass();
         String aspectName = aspectInstanceFactory.getAspectMetadata().getAspectName();
-        validate(aspectClass);
+        /** 模板第一次建的时候会 validate, 之后同一个类就不用再校验了. **/
+        AspectTemplate template = getTemplate(aspectClass);
 
         // We need to wrap the MetadataAwareAspectInstanceFactory with a decorator
         // so that it will only instantiate once.
         MetadataAwareAspectInstanceFactory lazySingletonAspectInstanceFactory =
                 new LazySingletonAspectInstanceFactoryDecorator(aspectInstanceFactory);
 
-        List<Advisor> advisors = new ArrayList<Advisor>();
-        for (Method method : getAdvisorMethods(aspectClass)) {
-            Advisor advisor = getAdvisor(method, lazySingletonAspectInstanceFactory, advisors.size(), aspectName);
-            if (advisor != null) {
-                advisors.add(advisor);
-            }
+        List<Advisor> advisors = new ArrayList<Advisor>(template.adviceMethods.length + 1);
+        for (int i = 0; i < template.adviceMethods.length; i++) {
+            advisors.add(new InstantiationModelAwarePointcutAdvisorImpl(template.pointcuts[i], template.adviceMethods[i],
+                    this, lazySingletonAspectInstanceFactory, advisors.size(), aspectName));
         }
 
         // If it's a per target aspect, emit the dummy instantiating aspect.
@@ -118,16 +132,59 @@ public class ReflectiveAspectJAdvisorFactory extends AbstractAspectJAdvisorFacto
         }
 
         // Find introduction fields.
-        for (Field field : aspectClass.getDeclaredFields()) {
-            Advisor advisor = getDeclareParentsAdvisor(field);
-            if (advisor != null) {
-                advisors.add(advisor);
-            }
+        for (Field field : template.introductionFields) {
+            advisors.add(getDeclareParentsAdvisor(field));
         }
 
         return advisors;
     }
 
+    /**
+     * 取切面类的模板, 没有就建一个.
+     * 切点是共享的: AspectJExpressionPointcut 解析之后只读, 而且它内部还缓存了 shadow match, 共享反而更好.
+     */
+    private AspectTemplate getTemplate(Class<?> aspectClass) {
+        AspectTemplate template = this.templateCache.get(aspectClass);
+        if (template == null) {
+            validate(aspectClass);
+            List<Method> adviceMethods = new ArrayList<Method>();
+            List<AspectJExpressionPointcut> pointcuts = new ArrayList<AspectJExpressionPointcut>();
+            for (Method method : getAdvisorMethods(aspectClass)) {
+                AspectJExpressionPointcut expressionPointcut = getPointcut(method, aspectClass);
+                if (expressionPointcut != null) {
+                    adviceMethods.add(method);
+                    pointcuts.add(expressionPointcut);
+                }
+            }
+            List<Field> introductionFields = new ArrayList<Field>();
+            for (Field field : aspectClass.getDeclaredFields()) {
+                /** 顺便校验一下, 有问题的话这里就抛出去了, 模板不会被缓存. **/
+                if (getDeclareParentsAdvisor(field) != null) {
+                    introductionFields.add(field);
+                }
+            }
+            template = new AspectTemplate(adviceMethods.toArray(new Method[adviceMethods.size()]),
+                    pointcuts.toArray(new AspectJExpressionPointcut[pointcuts.size()]),
+                    introductionFields.toArray(new Field[introductionFields.size()]));
+            AspectTemplate existing = this.templateCache.putIfAbsent(aspectClass, template);
+            if (existing != null) {
+                template = existing;
+            }
+        }
+        return template;
+    }
+
+    /** 参数名要读 class 文件的 LocalVariableTable, 同一个通知方法只读一次. **/
+    private String[] getParameterNames(Method adviceMethod) {
+        String[] argNames = this.parameterNameCache.get(adviceMethod);
+        if (argNames == null) {
+            argNames = this.parameterNameDiscoverer.getParameterNames(adviceMethod);
+            this.parameterNameCache.put(adviceMethod, argNames != null ? argNames : NO_PARAMETER_NAMES);
+            return argNames;
+        }
+        return (argNames != NO_PARAMETER_NAMES ? argNames : null);
+    }
+
     private List<Method> getAdvisorMethods(Class<?> aspectClass) {
         final List<Method> methods = new ArrayList<Method>();
         ReflectionUtils.doWithMethods(aspectClass, new ReflectionUtils.MethodCallback() {
@@ -266,7 +323,7 @@ public class ReflectiveAspectJAdvisorFactory extends AbstractAspectJAdvisorFacto
         // Now to configure the advice...
         springAdvice.setAspectName(aspectName);
         springAdvice.setDeclarationOrder(declarationOrder);
-        String[] argNames = this.parameterNameDiscoverer.getParameterNames(candidateAdviceMethod);
+        String[] argNames = getParameterNames(candidateAdviceMethod);
         if (argNames != null) {
             springAdvice.setArgumentNamesFromStringArray(argNames);
         }
@@ -276,6 +333,34 @@ public class ReflectiveAspectJAdvisorFactory extends AbstractAspectJAdvisorFacto
     }
 
 
+    private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+        ois.defaultReadObject();
+        this.templateCache = new ConcurrentHashMap<>();
+        this.parameterNameCache = new ConcurrentHashMap<>();
+    }
+
+
+    /**
+     * 一个切面类的模板: 和切面实例无关的那部分.
+     * adviceMethods 和 pointcuts 下标一一对应, 已经排好序、去掉了没有通知注解的方法.
+     */
+    private static final class AspectTemplate {
+
+        private final Method[] adviceMethods;
+
+        private final AspectJExpressionPointcut[] pointcuts;
+
+        /** 加了 @DeclareParents 的字段. **/
+        private final Field[] introductionFields;
+
+        AspectTemplate(Method[] adviceMethods, AspectJExpressionPointcut[] pointcuts, Field[] introductionFields) {
+            this.adviceMethods = adviceMethods;
+            this.pointcuts = pointcuts;
+            this.introductionFields = introductionFields;
+        }
+    }
+
+
     /**
      * Synthetic advisor that instantiates the aspect.
      * Triggered by per-clause pointcut on non-singleton aspect.
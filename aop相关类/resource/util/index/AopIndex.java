@@ -0,0 +1,396 @@
+package resource.util.index;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactoryUtils;
+import org.springframework.beans.factory.HierarchicalBeanFactory;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ConcurrentReferenceHashMap;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link AopIndexProcessor} 生成的索引, 启动时读进来.
+ * 找切面、找 Advisor 原本要拿到全部 beanName, 挨个 getType(也就是把每个 Bean 的类都加载一遍), 再问一句 "你是不是切面 / Advisor ?".
+ * 有了索引之后, 只需要把 Bean 定义走一遍, 按类名对上索引里的那几个类就行了.
+ *
+ * 索引不可用(没有索引文件、类加载不到、类已经不是切面了、通知方法对不上) 时 {@link #getBeanNamesFor} 返回 null,
+ * 调用方应当退回到扫描全部 Bean.
+ * 注意: 只有编译时经过了 {@link AopIndexProcessor} 的类才在索引里, 依赖的 jar 里的切面、Advisor 要么也带上索引, 要么别开这个模式.
+ * @author agent on 2026/10/17
+ */
+public final class AopIndex {
+
+    public static final String INDEX_LOCATION = "META-INF/spring-aop.index";
+
+    static final String ASPECT = "aspect";
+
+    static final String ADVICE = "advice";
+
+    static final String ADVISOR = "advisor";
+
+    /** 和 {@link AopIndexProcessor} 里的一样. **/
+    private static final String ADVICE_ANNOTATION_PACKAGE = "org.aspectj.lang.annotation.";
+
+    private static final Set<String> ADVICE_KINDS = new HashSet<>(
+            Arrays.asList("Around", "Before", "After", "AfterReturning", "AfterThrowing"));
+
+    private static final Log logger = LogFactory.getLog(AopIndex.class);
+
+    /** 每个 ClassLoader 只读一次, 弱引用, 不拖住 ClassLoader. 读不到索引的放 NO_INDEX. **/
+    private static final Map<ClassLoader, AopIndex> cache = new ConcurrentReferenceHashMap<>();
+
+    private static final AopIndex NO_INDEX = new AopIndex();
+
+    /** 切面类名 -> 通知方法. **/
+    private final Map<String, List<AdviceEntry>> aspects = new LinkedHashMap<>();
+
+    private final Set<String> advisors = new LinkedHashSet<>();
+
+    private AopIndex() {
+    }
+
+    /**
+     * 读 classLoader 能看到的所有索引文件(每个 jar 一份), 合并在一起.
+     * @return 一份索引都没有的话返回 null
+     */
+    public static AopIndex loadIndex(ClassLoader classLoader) {
+        ClassLoader classLoaderToUse = (classLoader != null ? classLoader : AopIndex.class.getClassLoader());
+        AopIndex index = cache.get(classLoaderToUse);
+        if (index == null) {
+            index = doLoadIndex(classLoaderToUse);
+            cache.put(classLoaderToUse, index);
+        }
+        return (index != NO_INDEX ? index : null);
+    }
+
+    private static AopIndex doLoadIndex(ClassLoader classLoader) {
+        try {
+            Enumeration<URL> urls = classLoader.getResources(INDEX_LOCATION);
+            if (!urls.hasMoreElements()) {
+                return NO_INDEX;
+            }
+            AopIndex index = new AopIndex();
+            while (urls.hasMoreElements()) {
+                index.read(urls.nextElement());
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("Loaded " + index);
+            }
+            return index;
+        }
+        catch (IOException ex) {
+            logger.warn("Unable to load " + INDEX_LOCATION + ", falling back to bean scanning", ex);
+            return NO_INDEX;
+        }
+    }
+
+    private void read(URL url) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\t", 6);
+                if (ASPECT.equals(fields[0]) && fields.length >= 2) {
+                    getAdvice(fields[1]);
+                }
+                else if (ADVICE.equals(fields[0]) && fields.length == 6) {
+                    getAdvice(fields[1]).add(
+                            new AdviceEntry(fields[2], fields[3], Integer.parseInt(fields[4]), fields[5]));
+                }
+                else if (ADVISOR.equals(fields[0]) && fields.length >= 2) {
+                    this.advisors.add(fields[1]);
+                }
+            }
+        }
+    }
+
+    private List<AdviceEntry> getAdvice(String aspectClassName) {
+        List<AdviceEntry> advice = this.aspects.get(aspectClassName);
+        if (advice == null) {
+            advice = new ArrayList<>();
+            this.aspects.put(aspectClassName, advice);
+        }
+        return advice;
+    }
+
+    public Set<String> getAspectClassNames() {
+        return Collections.unmodifiableSet(this.aspects.keySet());
+    }
+
+    /** 编译时记下的通知方法, 按声明顺序. **/
+    public List<AdviceEntry> getAdvice(Class<?> aspectClass) {
+        List<AdviceEntry> advice = this.aspects.get(aspectClass.getName());
+        return (advice != null ? Collections.unmodifiableList(advice) : Collections.<AdviceEntry>emptyList());
+    }
+
+    public Set<String> getAdvisorClassNames() {
+        return Collections.unmodifiableSet(this.advisors);
+    }
+
+    /**
+     * 用索引代替扫描: 索引里的切面类(aspects = true) 或 Advisor 类(aspects = false) 对应的 beanName.
+     * 顺序和 {@link BeanFactoryUtils#beanNamesForTypeIncludingAncestors} 扫描全部 Bean 时的顺序一致(按 Bean 定义的注册顺序, 本容器在前、父容器在后),
+     * 保证找出来的 Advisor 顺序和扫描时一样.
+     * @return 索引过期了(类加载不到、切面的通知方法对不上) 返回 null, 调用方应当退回扫描
+     */
+    public String[] getBeanNamesFor(ListableBeanFactory beanFactory, boolean aspects, ClassLoader classLoader) {
+        Set<String> classNames = (aspects ? this.aspects.keySet() : this.advisors);
+        List<Class<?>> types = new ArrayList<>(classNames.size());
+        for (String className : classNames) {
+            Class<?> type;
+            try {
+                type = ClassUtils.forName(className, classLoader);
+            }
+            catch (Throwable ex) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Stale " + INDEX_LOCATION + ": cannot load [" + className + "]");
+                }
+                return null;
+            }
+            if (aspects && !isCurrent(type)) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Stale " + INDEX_LOCATION + ": advice methods of [" + className + "] changed");
+                }
+                return null;
+            }
+            types.add(type);
+        }
+        List<String> beanNames = new ArrayList<>();
+        if (!types.isEmpty()) {
+            collectBeanNames(beanFactory, classNames, types, beanNames);
+        }
+        return beanNames.toArray(new String[beanNames.size()]);
+    }
+
+    /**
+     * 索引里记的通知方法和类里现在的通知方法一一对得上: 方法名、通知类型、切点表达式都一样, 个数也一样(新加的通知方法同样算过期).
+     * 切面是否真的加了 @Aspect 由调用方用 isAspect 再确认.
+     */
+    private boolean isCurrent(Class<?> aspectClass) {
+        List<String> indexed = new ArrayList<>();
+        for (AdviceEntry entry : this.aspects.get(aspectClass.getName())) {
+            indexed.add(entry.getMethodName() + '\t' + entry.getKind() + '\t' + entry.getExpression());
+        }
+        List<String> actual = new ArrayList<>();
+        for (Method method : aspectClass.getDeclaredMethods()) {
+            for (Annotation annotation : method.getDeclaredAnnotations()) {
+                String kind = getAdviceKind(annotation);
+                if (kind != null) {
+                    actual.add(method.getName() + '\t' + kind + '\t' + getExpression(annotation));
+                    break;
+                }
+            }
+        }
+        /** getDeclaredMethods 的顺序没有保证, 排好序再比. **/
+        Collections.sort(indexed);
+        Collections.sort(actual);
+        return indexed.equals(actual);
+    }
+
+    /** AspectJ 的通知注解返回简单名(Before/Around...), 和 {@link AopIndexProcessor} 记的一样; 其他注解返回 null. **/
+    private static String getAdviceKind(Annotation annotation) {
+        String name = annotation.annotationType().getName();
+        if (!name.startsWith(ADVICE_ANNOTATION_PACKAGE)) {
+            return null;
+        }
+        String kind = name.substring(ADVICE_ANNOTATION_PACKAGE.length());
+        return (ADVICE_KINDS.contains(kind) ? kind : null);
+    }
+
+    /** 和 {@link AopIndexProcessor} 一样: pointcut 优先, 空的话取 value, 空白压成一个空格. **/
+    private static String getExpression(Annotation annotation) {
+        Object pointcut = AnnotationUtils.getValue(annotation, "pointcut");
+        String expression = (pointcut instanceof String ? (String) pointcut : "");
+        if (expression.isEmpty()) {
+            Object value = AnnotationUtils.getValue(annotation);
+            expression = (value instanceof String ? (String) value : "");
+        }
+        return expression.replaceAll("\\s+", " ").trim();
+    }
+
+    /**
+     * 一趟走完本容器的 Bean 定义, 每个 Bean 只看一次, 不再对索引里的每个类各扫一遍全部 Bean: ↓
+     *     直接写了类名的(不是工厂方法): 先比类名; 对不上的, 再看是不是索引里的类的子类(比如继承了抽象切面),
+     *         索引里的类都是 final 的就不用看了. 要加载 Bean 的类(不初始化), 不走 getType 的那一套.
+     *     工厂方法、FactoryBean 这类拿不到类名的: getType(name, false) 问一次, 再看是不是索引里的类(或子类).
+     * 手工 registerSingleton 的也看一遍, 然后是父容器, 本容器已经有的名字跳过. 和 beanNamesForTypeIncludingAncestors 的规则一样.
+     */
+    private static void collectBeanNames(ListableBeanFactory beanFactory, Set<String> classNames,
+            List<Class<?>> types, List<String> result) {
+
+        ConfigurableListableBeanFactory configurable = (beanFactory instanceof ConfigurableListableBeanFactory ?
+                (ConfigurableListableBeanFactory) beanFactory : null);
+        Set<String> seen = new HashSet<>();
+        for (String beanName : beanFactory.getBeanDefinitionNames()) {
+            seen.add(beanName);
+            if (matchesDefinition(beanFactory, configurable, beanName, classNames, types)) {
+                result.add(beanName);
+            }
+        }
+        if (configurable != null) {
+            for (String beanName : configurable.getSingletonNames()) {
+                if (seen.add(beanName) && matchesType(beanFactory, beanName, types)) {
+                    result.add(beanName);
+                }
+            }
+        }
+        if (beanFactory instanceof HierarchicalBeanFactory) {
+            HierarchicalBeanFactory hierarchical = (HierarchicalBeanFactory) beanFactory;
+            if (hierarchical.getParentBeanFactory() instanceof ListableBeanFactory) {
+                List<String> parentResult = new ArrayList<>();
+                collectBeanNames((ListableBeanFactory) hierarchical.getParentBeanFactory(), classNames, types, parentResult);
+                for (String beanName : parentResult) {
+                    if (!result.contains(beanName) && !hierarchical.containsLocalBean(beanName)) {
+                        result.add(beanName);
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean matchesDefinition(ListableBeanFactory beanFactory, ConfigurableListableBeanFactory configurable,
+            String beanName, Set<String> classNames, List<Class<?>> types) {
+
+        if (configurable != null) {
+            BeanDefinition definition;
+            try {
+                definition = configurable.getMergedBeanDefinition(beanName);
+            }
+            catch (BeansException ex) {
+                return matchesType(beanFactory, beanName, types);
+            }
+            if (definition.isAbstract()) {
+                return false;
+            }
+            String beanClassName = definition.getBeanClassName();
+            if (beanClassName != null && definition.getFactoryMethodName() == null &&
+                    definition.getFactoryBeanName() == null) {
+                return (classNames.contains(beanClassName) ||
+                        isSubclass(definition, beanClassName, configurable.getBeanClassLoader(), types));
+            }
+        }
+        return matchesType(beanFactory, beanName, types);
+    }
+
+    /** Bean 的类是不是索引里某个(非 final) 类的子类. 类加载不了的算不是, 和按类型扫描时一样. **/
+    private static boolean isSubclass(BeanDefinition definition, String beanClassName, ClassLoader classLoader,
+            List<Class<?>> types) {
+
+        boolean extendable = false;
+        for (Class<?> type : types) {
+            if (!Modifier.isFinal(type.getModifiers())) {
+                extendable = true;
+                break;
+            }
+        }
+        if (!extendable) {
+            return false;
+        }
+        Class<?> beanClass;
+        try {
+            beanClass = (definition instanceof AbstractBeanDefinition && ((AbstractBeanDefinition) definition).hasBeanClass() ?
+                    ((AbstractBeanDefinition) definition).getBeanClass() : ClassUtils.forName(beanClassName, classLoader));
+        }
+        catch (Throwable ex) {
+            return false;
+        }
+        for (Class<?> type : types) {
+            if (type != beanClass && type.isAssignableFrom(beanClass)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matchesType(ListableBeanFactory beanFactory, String beanName, List<Class<?>> types) {
+        Class<?> beanType;
+        try {
+            beanType = beanFactory.getType(beanName, false);
+        }
+        catch (BeansException ex) {
+            return false;
+        }
+        if (beanType == null) {
+            return false;
+        }
+        for (Class<?> type : types) {
+            if (type.isAssignableFrom(beanType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "AopIndex: " + this.aspects.size() + " aspects, " + this.advisors.size() + " advisors";
+    }
+
+
+    /** 一个通知方法: 方法名、通知类型(Before/Around...)、在切面里的声明顺序、切点表达式. **/
+    public static final class AdviceEntry {
+
+        private final String methodName;
+
+        private final String kind;
+
+        private final int declarationOrder;
+
+        private final String expression;
+
+        AdviceEntry(String methodName, String kind, int declarationOrder, String expression) {
+            this.methodName = methodName;
+            this.kind = kind;
+            this.declarationOrder = declarationOrder;
+            this.expression = expression;
+        }
+
+        public String getMethodName() {
+            return this.methodName;
+        }
+
+        public String getKind() {
+            return this.kind;
+        }
+
+        public int getDeclarationOrder() {
+            return this.declarationOrder;
+        }
+
+        public String getExpression() {
+            return this.expression;
+        }
+
+        @Override
+        public String toString() {
+            return "@" + this.kind + "(\"" + this.expression + "\") " + this.methodName;
+        }
+    }
+
+}
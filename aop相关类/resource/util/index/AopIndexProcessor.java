@@ -0,0 +1,203 @@
+package resource.util.index;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 编译期生成 {@link AopIndex#INDEX_LOCATION}: 编译的源码里有哪些 @Aspect 类、哪些 Advisor 实现类,
+ * 以及每个切面的通知方法、通知类型、声明顺序、切点表达式.
+ * 用法: 加到 javac 的 -processor 参数里, 或者在 META-INF/services/javax.annotation.processing.Processor 里注册.
+ *
+ * 增量编译时只有改过的类会交给处理器, 所以会先读出已有的索引, 把这次编译的类替换掉, 其他的原样保留.
+ * 只依赖注解/类型的全名, 编译期不需要 AspectJ、Spring 在 processor path 上.
+ * @see AopIndex
+ * @author agent on 2026/10/17
+ */
+@SupportedAnnotationTypes("*")
+public class AopIndexProcessor extends AbstractProcessor {
+
+    private static final String ASPECT_ANNOTATION = "org.aspectj.lang.annotation.Aspect";
+
+    private static final String ADVISOR_TYPE = "org.springframework.aop.Advisor";
+
+    private static final String ADVICE_ANNOTATION_PACKAGE = "org.aspectj.lang.annotation.";
+
+    /** 通知注解的简单名, 顺序无所谓. **/
+    private static final String[] ADVICE_KINDS = {"Around", "Before", "After", "AfterReturning", "AfterThrowing"};
+
+    /** 类名 -> 这个类的索引行, 保持处理的顺序. **/
+    private final Map<String, List<String>> entries = new LinkedHashMap<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getRootElements()) {
+            collect(element);
+        }
+        if (roundEnv.processingOver() && !this.entries.isEmpty()) {
+            writeIndex();
+        }
+        /** 不认领任何注解, 别的处理器照常处理. **/
+        return false;
+    }
+
+    /** 顶层类和内部类都要看. **/
+    private void collect(Element element) {
+        if (element.getKind() != ElementKind.CLASS) {
+            return;
+        }
+        TypeElement type = (TypeElement) element;
+        String className = this.processingEnv.getElementUtils().getBinaryName(type).toString();
+        List<String> lines = new ArrayList<>();
+        if (findAnnotation(type, ASPECT_ANNOTATION) != null) {
+            lines.add(AopIndex.ASPECT + '\t' + className);
+            int declarationOrder = 0;
+            for (Element enclosed : type.getEnclosedElements()) {
+                if (enclosed.getKind() == ElementKind.METHOD) {
+                    String line = adviceLine(className, (ExecutableElement) enclosed, declarationOrder);
+                    if (line != null) {
+                        lines.add(line);
+                        declarationOrder++;
+                    }
+                }
+            }
+        }
+        else if (isConcreteAdvisor(type)) {
+            lines.add(AopIndex.ADVISOR + '\t' + className);
+        }
+        /** 这次编译了这个类, 旧的条目就作废了, 哪怕现在它已经不是切面了. **/
+        this.entries.put(className, lines);
+        for (Element enclosed : type.getEnclosedElements()) {
+            collect(enclosed);
+        }
+    }
+
+    /** advice  类名  方法名  通知类型  声明顺序  切点表达式. **/
+    private String adviceLine(String className, ExecutableElement method, int declarationOrder) {
+        for (String kind : ADVICE_KINDS) {
+            AnnotationMirror annotation = findAnnotation(method, ADVICE_ANNOTATION_PACKAGE + kind);
+            if (annotation != null) {
+                String expression = getAttribute(annotation, "pointcut");
+                if (expression.isEmpty()) {
+                    expression = getAttribute(annotation, "value");
+                }
+                return AopIndex.ADVICE + '\t' + className + '\t' + method.getSimpleName() + '\t' + kind + '\t' +
+                        declarationOrder + '\t' + expression.replaceAll("\\s+", " ").trim();
+            }
+        }
+        return null;
+    }
+
+    private boolean isConcreteAdvisor(TypeElement type) {
+        if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+            return false;
+        }
+        TypeElement advisorType = this.processingEnv.getElementUtils().getTypeElement(ADVISOR_TYPE);
+        if (advisorType == null) {
+            return false;
+        }
+        TypeMirror advisorMirror = this.processingEnv.getTypeUtils().erasure(advisorType.asType());
+        return this.processingEnv.getTypeUtils().isAssignable(
+                this.processingEnv.getTypeUtils().erasure(type.asType()), advisorMirror);
+    }
+
+    private static AnnotationMirror findAnnotation(Element element, String annotationType) {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            Element annotationElement = annotation.getAnnotationType().asElement();
+            if (((TypeElement) annotationElement).getQualifiedName().contentEquals(annotationType)) {
+                return annotation;
+            }
+        }
+        return null;
+    }
+
+    private static String getAttribute(AnnotationMirror annotation, String name) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry :
+                annotation.getElementValues().entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(name)) {
+                return String.valueOf(entry.getValue().getValue());
+            }
+        }
+        return "";
+    }
+
+    /** 先把已有索引里这次没编译到的类读出来, 再和这次的合并写回去. **/
+    private void writeIndex() {
+        Map<String, List<String>> merged = readExistingIndex();
+        merged.putAll(this.entries);
+        try {
+            FileObject file = this.processingEnv.getFiler().createResource(
+                    StandardLocation.CLASS_OUTPUT, "", AopIndex.INDEX_LOCATION);
+            try (Writer writer = new OutputStreamWriter(file.openOutputStream(), StandardCharsets.UTF_8)) {
+                writer.write("# Generated by " + getClass().getName() + ", do not edit.\n");
+                for (List<String> lines : merged.values()) {
+                    for (String line : lines) {
+                        writer.write(line);
+                        writer.write('\n');
+                    }
+                }
+            }
+        }
+        catch (IOException ex) {
+            this.processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                    "Unable to write " + AopIndex.INDEX_LOCATION + ": " + ex);
+        }
+    }
+
+    private Map<String, List<String>> readExistingIndex() {
+        Map<String, List<String>> existing = new LinkedHashMap<>();
+        try {
+            FileObject file = this.processingEnv.getFiler().getResource(
+                    StandardLocation.CLASS_OUTPUT, "", AopIndex.INDEX_LOCATION);
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(file.openInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split("\t");
+                    if (fields.length < 2 || line.startsWith("#")) {
+                        continue;
+                    }
+                    List<String> lines = existing.get(fields[1]);
+                    if (lines == null) {
+                        lines = new ArrayList<>();
+                        existing.put(fields[1], lines);
+                    }
+                    lines.add(line);
+                }
+            }
+        }
+        catch (IOException ex) {
+            /** 第一次编译, 还没有索引. **/
+        }
+        return existing;
+    }
+
+}
@@ -0,0 +1,4 @@
+/**
+ * 编译期生成的切面、Advisor 索引, 启动时用来代替扫描全部 Bean.
+ */
+package resource.util.index;